@@ -0,0 +1,104 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.benchmarks;
+
+import com.fllo.co.line.Dispatcher;
+import com.fllo.co.line.JvmColine;
+import com.fllo.co.line.builders.HttpMethod;
+import com.fllo.co.line.callbacks.ObjCollback;
+import com.fllo.co.line.io.BodyReader;
+import com.fllo.co.line.results.Error;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Time to complete a burst of requests sent at once, with the
+ * blocking HttpURLConnection and with the non-blocking transport
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConcurrencyBenchmark {
+
+    @Param({"blocking", "nonBlocking"})
+    public String transport;
+
+    @Param({"512"})
+    public int requests;
+
+    private LocalServer server;
+    private String url;
+
+    @Setup
+    public void setup() throws IOException {
+        server = new LocalServer(Payloads.page(20).getBytes(BodyReader.UTF_8));
+        url = server.url().toString();
+        Dispatcher.getInstance().setMaxPending(requests * 2);
+        if ("nonBlocking".equals(transport)) {
+            JvmColine.enableNonBlocking(2);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        JvmColine.disableNonBlocking();
+        server.stop();
+    }
+
+    @Benchmark
+    public int burst() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(requests);
+        final AtomicInteger failures = new AtomicInteger();
+        for (int i = 0; i < requests; ++i) {
+            JvmColine.init()
+                    .url(HttpMethod.GET, url + "?page=" + i)
+                    .res(new ObjCollback<Movie.Page>() {
+                        @Override
+                        public void onResult(Movie.Page page, Error err) {
+                            if (err != null) {
+                                failures.incrementAndGet();
+                            }
+                            done.countDown();
+                        }
+                    })
+                    .exec();
+        }
+        done.await();
+        if (failures.get() > 0) {
+            throw new IllegalStateException(failures.get() + " requests failed");
+        }
+        return requests;
+    }
+}
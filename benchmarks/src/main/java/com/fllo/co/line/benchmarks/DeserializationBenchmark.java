@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.benchmarks;
+
+import com.fllo.co.line.builders.Converter;
+import com.fllo.co.line.io.BodyReader;
+import com.google.gson.stream.JsonReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of an ObjCollback object with the shared Gson, from
+ * a String (memory cache path) or straight from the stream
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeserializationBenchmark {
+
+    private final Converter converter = Converter.getInstance();
+    private String movie;
+    private String page;
+    private byte[] pageBytes;
+
+    @Setup
+    public void setup() {
+        movie = Payloads.movie(603);
+        page = Payloads.page(20);
+        pageBytes = page.getBytes(BodyReader.UTF_8);
+    }
+
+    @Benchmark
+    public Object movie() throws IOException {
+        return converter.read(new JsonReader(new StringReader(movie)), Movie.class);
+    }
+
+    @Benchmark
+    public Object pageFromString() throws IOException {
+        return converter.read(new JsonReader(new StringReader(page)), Movie.Page.class);
+    }
+
+    @Benchmark
+    public Object pageFromStream() throws IOException {
+        return converter.read(new JsonReader(new InputStreamReader(
+                new ByteArrayInputStream(pageBytes), BodyReader.UTF_8)), Movie.Page.class);
+    }
+}
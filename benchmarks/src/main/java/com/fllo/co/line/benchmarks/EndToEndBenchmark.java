@@ -0,0 +1,148 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.benchmarks;
+
+import com.fllo.co.line.AbstractColine;
+import com.fllo.co.line.JvmColine;
+import com.fllo.co.line.builders.Converter;
+import com.fllo.co.line.builders.HttpMethod;
+import com.fllo.co.line.callbacks.ObjCollback;
+import com.fllo.co.line.io.BodyReader;
+import com.fllo.co.line.io.Connections;
+import com.fllo.co.line.io.Encodings;
+import com.fllo.co.line.results.Error;
+import com.google.gson.stream.JsonReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Requests per second against an embedded HTTP server on the
+ * loopback. get() goes through the steps of Request by hand:
+ * connection, gzip decoding, parsing from the stream and keep-alive
+ * release. coline() sends the same request with the whole engine.
+ * Each request has its own "page" query, so the concurrent ones
+ * aren't coalesced as identical requests
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndToEndBenchmark {
+
+    private LocalServer server;
+    private URL url;
+    private final AtomicLong page = new AtomicLong();
+
+    @Setup
+    public void setup() throws IOException {
+        server = new LocalServer(Payloads.page(20).getBytes(BodyReader.UTF_8));
+        url = server.url();
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Benchmark
+    public Object get() throws IOException {
+        return request();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object concurrentGet() throws IOException {
+        return request();
+    }
+
+    @Benchmark
+    public Object coline() throws Exception {
+        return send();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object concurrentColine() throws Exception {
+        return send();
+    }
+
+    /**
+     * Private: GET the page of movies with JvmColine,
+     * the result is given in the worker thread
+     */
+    private Object send() throws Exception {
+        final CountDownLatch done = new CountDownLatch(1);
+        final Object[] result = new Object[1];
+        JvmColine.init()
+                .url(HttpMethod.GET, url + "?page=" + page.incrementAndGet())
+                .deliverOn(AbstractColine.WORKER)
+                .res(new ObjCollback<Movie.Page>() {
+                    @Override
+                    public void onResult(Movie.Page page, Error err) {
+                        result[0] = err != null ? err : page;
+                        done.countDown();
+                    }
+                })
+                .exec();
+        done.await();
+        if (result[0] instanceof Error) {
+            throw new IOException(String.valueOf(result[0]));
+        }
+        return result[0];
+    }
+
+    /**
+     * Private: GET the page of movies and parse it
+     */
+    private Object request() throws IOException {
+        HttpURLConnection http = (HttpURLConnection) new URL(url + "?page="
+                + page.incrementAndGet()).openConnection();
+        http.setRequestProperty("Accept-Encoding", Encodings.ACCEPT_ENCODING);
+        if (http.getResponseCode() != 200) {
+            throw new IOException("Status " + http.getResponseCode());
+        }
+        InputStream in = http.getInputStream();
+        try {
+            return Converter.getInstance().read(new JsonReader(new InputStreamReader(
+                    Encodings.decode(in, http.getContentEncoding()), BodyReader.UTF_8)),
+                    Movie.Page.class);
+        } finally {
+            Connections.release(in);
+        }
+    }
+}
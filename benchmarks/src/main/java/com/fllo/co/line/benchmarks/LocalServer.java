@@ -0,0 +1,80 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.benchmarks;
+
+import com.fllo.co.line.io.Encodings;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Embedded HTTP server on the loopback, answering the same
+ * JSON body to every GET, gzipped when the client accepts it
+ */
+final class LocalServer {
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    LocalServer(byte[] plain) throws IOException {
+        final byte[] gzipped = Payloads.gzip(plain);
+        final byte[] body = plain;
+
+        // Without it, Nagle and delayed ACKs add 40ms to each response
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+
+        executor = Executors.newFixedThreadPool(8);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 4096);
+        server.setExecutor(executor);
+        server.createContext("/movies", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                boolean gzip = accept != null && accept.contains(Encodings.GZIP);
+                byte[] response = gzip ? gzipped : body;
+
+                exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+                if (gzip) {
+                    exchange.getResponseHeaders().set("Content-Encoding", Encodings.GZIP);
+                }
+                exchange.sendResponseHeaders(200, response.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(response);
+                out.close();
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * URL of the JSON body
+     */
+    URL url() throws IOException {
+        return new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/movies");
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
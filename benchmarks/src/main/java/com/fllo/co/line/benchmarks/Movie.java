@@ -0,0 +1,48 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.benchmarks;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.util.List;
+
+/**
+ * Same fields as the MovieObject of the sample, without
+ * Parcelable so it runs on a plain JVM
+ */
+public class Movie {
+
+    @SerializedName(value = "id", alternate = {"_id"})
+    int id;
+    @SerializedName("title")
+    String title;
+    @SerializedName("overview")
+    String overview;
+    @SerializedName("poster_path")
+    String poster_path;
+    float vote_average;
+
+    /**
+     * Page of movies, as returned by the movies API
+     */
+    public static class Page {
+
+        int page;
+        List<Movie> results;
+        int total_results;
+        int total_pages;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.benchmarks;
+
+import com.fllo.co.line.io.BodyReader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Bodies shared by the benchmarks
+ */
+final class Payloads {
+
+    private static final String OVERVIEW = "Un jeune homme d\u00e9couvre que le monde qu'il croit "
+            + "conna\u00eetre n'est qu'une simulation, et rejoint une poign\u00e9e de rebelles pour "
+            + "affronter les machines qui contr\u00f4lent l'humanit\u00e9. \\\"Follow the white rabbit.\\\"";
+
+    private Payloads() { }
+
+    /**
+     * JSON of one movie, about 400 bytes
+     */
+    static String movie(int id) {
+        return "{\"id\":" + id + ",\"title\":\"The Matrix " + id + "\",\"overview\":\""
+                + OVERVIEW + "\",\"poster_path\":\"/f89U3ADr1oiB1s9GkdPOEpXUk5H.jpg\","
+                + "\"vote_average\":8.1,\"adult\":false,\"genre_ids\":[28,878]}";
+    }
+
+    /**
+     * JSON of a page of movies
+     */
+    static String page(int count) {
+        StringBuilder json = new StringBuilder("{\"page\":1,\"results\":[");
+        for (int i = 0; i < count; ++i) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(movie(i));
+        }
+        return json.append("],\"total_results\":").append(count)
+                .append(",\"total_pages\":1}").toString();
+    }
+
+    /**
+     * JSON body of at least the given size, made of pages
+     */
+    static byte[] body(int size) {
+        StringBuilder json = new StringBuilder("[");
+        while (json.length() < size) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append(page(20));
+        }
+        return json.append(']').toString().getBytes(BodyReader.UTF_8);
+    }
+
+    /**
+     * Keys/values pairs of a form, with characters to escape
+     */
+    static List<Map.Entry<String, Object>> form(int fields) {
+        List<Map.Entry<String, Object>> values = new ArrayList<>(fields);
+        for (int i = 0; i < fields; ++i) {
+            values.add(new AbstractMap.SimpleEntry<String, Object>("field_" + i,
+                    i % 2 == 0 ? "Gitdefllo" + i : "Caf\u00e9 & cr\u00e8me = 2\u20ac / personne"));
+        }
+        return values;
+    }
+
+    /**
+     * Compress a body with gzip
+     */
+    static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4);
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(body);
+        gzip.close();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.benchmarks;
+
+import com.fllo.co.line.io.BodyReader;
+import com.fllo.co.line.io.Encodings;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading loop of a response body into a String, with and
+ * without Content-Length, and with gzip decompression
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseReadingBenchmark {
+
+    private static final String CONTENT_TYPE = "application/json; charset=utf-8";
+
+    @Param({"1024", "65536", "1048576"})
+    int size;
+
+    private byte[] body;
+    private byte[] gzipped;
+
+    @Setup
+    public void setup() throws IOException {
+        body = Payloads.body(size);
+        gzipped = Payloads.gzip(body);
+    }
+
+    @Benchmark
+    public String knownLength() throws IOException {
+        return BodyReader.read(new ByteArrayInputStream(body), body.length, CONTENT_TYPE);
+    }
+
+    @Benchmark
+    public String unknownLength() throws IOException {
+        return BodyReader.read(new ByteArrayInputStream(body), -1, CONTENT_TYPE);
+    }
+
+    @Benchmark
+    public String gzip() throws IOException {
+        return BodyReader.read(Encodings.decode(new ByteArrayInputStream(gzipped),
+                Encodings.GZIP), -1, CONTENT_TYPE);
+    }
+}
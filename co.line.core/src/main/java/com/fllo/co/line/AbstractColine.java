@@ -0,0 +1,1134 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line;
+
+import com.fllo.co.line.bodies.Body;
+import com.fllo.co.line.bodies.BytesBody;
+import com.fllo.co.line.bodies.FileBody;
+import com.fllo.co.line.bodies.JsonBody;
+import com.fllo.co.line.bodies.MultipartBody;
+import com.fllo.co.line.bodies.StreamBody;
+import com.fllo.co.line.builders.Converter;
+import com.fllo.co.line.builders.HttpMethod;
+import com.fllo.co.line.builders.Logs;
+import com.fllo.co.line.builders.Priority;
+import com.fllo.co.line.cache.DiskCache;
+import com.fllo.co.line.cache.MemoryCache;
+import com.fllo.co.line.callbacks.Collback;
+import com.fllo.co.line.callbacks.ObjCollback;
+import com.fllo.co.line.callbacks.Progress;
+import com.fllo.co.line.io.Connections;
+import com.fllo.co.line.metrics.CallMetrics;
+import com.fllo.co.line.metrics.Metrics;
+import com.fllo.co.line.metrics.MetricsListener;
+import com.fllo.co.line.nio.NioTransport;
+import com.fllo.co.line.policies.CircuitBreaker;
+import com.fllo.co.line.policies.RetryBudget;
+import com.fllo.co.line.policies.RetryPolicy;
+import com.fllo.co.line.results.Error;
+import com.fllo.co.line.results.Response;
+import com.fllo.co.line.transport.Transport;
+import com.google.gson.JsonElement;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+/**
+ * HTTP engine of Co.line, independent of the platform:
+ * the request runs in the shared dispatcher and its result
+ * is given to the callback with the executor of the platform.
+ * See Coline for Android, JvmColine for a plain JVM
+ *
+ * @param <T> Platform class returned by the builder methods
+ */
+public abstract class AbstractColine<T extends AbstractColine<T>> implements Observer {
+
+    private static final String CO_LINE  = "Co.line";
+
+    /**
+     * Executor running the results directly in the worker
+     * thread of the request, without any thread switch
+     */
+    public static final Executor WORKER = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private Future<?> call;
+    private String httpmethod;
+    private String route;
+    private Map<String, Object> headers;
+    private Map<String, Object> values;
+    private Collback collback;
+    private ObjCollback objcollback;
+    private Body body;
+    private Progress progress;
+    private File download;
+    private int segments = 1;
+    private Executor executor;
+    private volatile long requestId;
+    private long queuedAt;
+    private boolean logs;
+    private Priority priority = Priority.NORMAL;
+    private long ttl = -1;
+    private boolean gzip;
+    private int connectTimeout;
+    private int readTimeout;
+    private RetryPolicy retryPolicy;
+    private Transport transport;
+    private volatile Queue queue;
+    private String leader;
+    private volatile String follower;
+    private String host;
+
+    /**
+     * Protected: coline's constructor, with the
+     * current status of the logs
+     */
+    protected AbstractColine() {
+        this.logs = getLogsStatus();
+    }
+
+    /**
+     * Protected: get the current instance, typed as
+     * the platform class for the builder methods
+     *
+     * @return Current instance of the class
+     */
+    protected abstract T self();
+
+    /**
+     * Protected: check if the result can still be delivered,
+     * for example while the screen of the request exists
+     *
+     * @return true by default
+     */
+    protected boolean isAlive() {
+        return true;
+    }
+
+    /**
+     * Protected: get the executor of the callbacks when
+     * none is given with deliverOn()
+     *
+     * @return WORKER by default
+     */
+    protected Executor defaultExecutor() {
+        return WORKER;
+    }
+
+    /**
+     * Initiates HTTP request and URL of server
+     * HTTP request method is a static int value from HttpMethod class as:
+     *      - HttpMethod.GET
+     *      - HttpMethod.POST
+     *      - HttpMethod.PUT
+     *      - HttpMethod.DELETE
+     *      - HttpMethod.HEAD
+     *
+     * @param httpmethod (HttpMethod) Value of HttpMethod
+     * @param route (String) Value of URL route
+     * @return Current instance of the class
+     * @see HttpMethod
+     */
+    public T url(HttpMethod httpmethod, String route) {
+        this.httpmethod = httpmethod.toString();
+        this.route  = route;
+        this.host = null;
+        return self();
+    }
+
+    /**
+     * Prepare the header properties from a Map
+     *
+     * @param params (Map) Values of header properties
+     * @return Current instance of the class
+     */
+    public T head(final Map<String, ?> params) {
+        if (params.size() <= 0) {
+            if ( logs ) Logs.e(CO_LINE, "Please check the properties sent in " +
+                        "\"head(Map<String, ?>)\".");
+        }
+
+        this.headers = new LinkedHashMap<String, Object>(params);
+        return self();
+    }
+
+    /**
+     * Add a header property
+     *
+     * @param name (String) Name of the property
+     * @param value (Object) Value of the property
+     * @return Current instance of the class
+     */
+    public T head(final String name, final Object value) {
+        if (this.headers == null) {
+            this.headers = new LinkedHashMap<>();
+        }
+        this.headers.put(name, String.valueOf(value));
+        return self();
+    }
+
+    /**
+     * Prepare the values for body request from a Map
+     *
+     * @param values (Map) Values of body request
+     * @return Current instance of the class
+     */
+    public T with(final Map<String, ?> values) {
+        if (values.size() <= 0) {
+            if ( logs ) Logs.e(CO_LINE, "Please check the values sent in " +
+                    "\"with(Map<String, ?>)\".");
+        }
+
+        this.values = new LinkedHashMap<String, Object>(values);
+        return self();
+    }
+
+    /**
+     * Add a value to the body request
+     *
+     * @param key (String) Name of the value
+     * @param value (Object) Value
+     * @return Current instance of the class
+     */
+    public T with(final String key, final Object value) {
+        if (this.values == null) {
+            this.values = new LinkedHashMap<>();
+        }
+        this.values.put(key, String.valueOf(value));
+        return self();
+    }
+
+    /**
+     * Send a file as the body of the request. The file is
+     * streamed, so its size does not matter
+     *
+     * @param file (File) File to send
+     * @param contentType (String) Content-Type of the file
+     * @return Current instance of the class
+     */
+    public T with(final File file, final String contentType) {
+        return with(new FileBody(file, contentType));
+    }
+
+    /**
+     * Send a byte array as the body of the request
+     *
+     * @param bytes (byte[]) Content of the body
+     * @param contentType (String) Content-Type of the body
+     * @return Current instance of the class
+     */
+    public T with(final byte[] bytes, final String contentType) {
+        return with(new BytesBody(bytes, contentType));
+    }
+
+    /**
+     * Stream an InputStream as the body of the request. The
+     * stream is closed once sent, and the request is not retried
+     *
+     * @param in (InputStream) Content of the body
+     * @param length (long) Length of the content, -1 if unknown
+     * @param contentType (String) Content-Type of the body
+     * @return Current instance of the class
+     */
+    public T with(final InputStream in, final long length, final String contentType) {
+        return with(new StreamBody(in, length, contentType));
+    }
+
+    /**
+     * Send an object as a JSON body, serialized with the
+     * shared Gson straight into the connection
+     *
+     * @param object (Object) Object to send (can be 'null')
+     * @return Current instance of the class
+     * @throws IllegalArgumentException for a File, a byte array, an
+     * InputStream or a Reader, which have their own with() methods
+     * @see JsonBody
+     */
+    public T with(final Object object) {
+        if (object instanceof File || object instanceof byte[]
+                || object instanceof InputStream || object instanceof Reader) {
+            throw new IllegalArgumentException("A " + object.getClass().getSimpleName()
+                    + " is not sent as JSON, give its Content-Type with "
+                    + "with(File, String), with(byte[], String) or with(InputStream, long, String)");
+        }
+        return with(new JsonBody(object));
+    }
+
+    /**
+     * Send a JSON tree as the body of the request
+     *
+     * @param json (JsonElement) JSON to send
+     * @return Current instance of the class
+     * @see JsonBody
+     */
+    public T with(final JsonElement json) {
+        return with(new JsonBody(json));
+    }
+
+    /**
+     * Set the body of the request, as a MultipartBody
+     * or any other Body. It replaces the values given
+     * with with(Map)
+     *
+     * @param body (Body) Body of the request
+     * @return Current instance of the class
+     * @see MultipartBody
+     */
+    public T with(final Body body) {
+        this.body = body;
+        return self();
+    }
+
+    /**
+     * Download the body of a successful response into a file,
+     * returned in Response.file. The body is never kept in
+     * memory, and an interrupted download is resumed with
+     * a Range request the next time the same file is asked
+     *
+     * @param file (File) Destination of the body
+     * @return Current instance of the class
+     */
+    public T download(File file) {
+        return download(file, 1);
+    }
+
+    /**
+     * Download a large file in byte ranges fetched concurrently,
+     * each one with its own connection. A HEAD request gives the
+     * size of the file first; a single connection is used when
+     * the server does not accept ranges or the file is small
+     * See also: download(File)
+     *
+     * @param file (File) Destination of the body
+     * @param segments (int) Maximum number of concurrent ranges
+     * @return Current instance of the class
+     */
+    public T download(File file, int segments) {
+        this.download = file;
+        this.segments = Math.max(1, segments);
+        return self();
+    }
+
+    /**
+     * Follow the upload of the body and the download
+     * of the file
+     *
+     * @param progress (Progress) Listener of the transfer
+     * @return Current instance of the class
+     */
+    public T progress(Progress progress) {
+        this.progress = progress;
+        return self();
+    }
+
+    /**
+     * Deliver the result and the progress with an executor
+     * instead of the default one of the platform. WORKER
+     * runs them directly in the worker thread of the request
+     *
+     * @param executor (Executor) Executor of the callbacks
+     * @return Current instance of the class
+     */
+    public T deliverOn(Executor executor) {
+        this.executor = executor;
+        return self();
+    }
+
+    /**
+     * Set the timeouts of the request
+     * See also: setDefaultTimeouts(int, int)
+     *
+     * @param connect (int) Connection timeout in ms
+     * @param read (int) Read timeout in ms
+     * @return Current instance of the class
+     */
+    public T timeout(int connect, int read) {
+        this.connectTimeout = connect;
+        this.readTimeout = read;
+        return self();
+    }
+
+    /**
+     * Set the retry policy of the request. Only GET, HEAD,
+     * PUT, DELETE and OPTIONS requests are retried
+     * See also: setDefaultRetry(RetryPolicy)
+     *
+     * @param policy (RetryPolicy) Policy, RetryPolicy.NONE to disable retries
+     * @return Current instance of the class
+     * @see RetryPolicy
+     */
+    public T retry(RetryPolicy policy) {
+        this.retryPolicy = policy;
+        return self();
+    }
+
+    /**
+     * Send the request with a transport, for example
+     * the batches of a queue over one HTTP/2 connection
+     * See also: setDefaultTransport(Transport)
+     *
+     * @param transport (Transport) Transport of the request
+     * @return Current instance of the class
+     * @see Transport
+     */
+    public T transport(Transport transport) {
+        this.transport = transport;
+        return self();
+    }
+
+    /**
+     * Compress the body of the request with gzip when
+     * it is bigger than 1 KB. The server must accept
+     * "Content-Encoding: gzip" requests
+     *
+     * @return Current instance of the class
+     */
+    public T gzip() {
+        this.gzip = true;
+        return self();
+    }
+
+    /**
+     * Set the priority of the request. Waiting requests are
+     * started from the highest priority to the lowest:
+     *      - Priority.CRITICAL
+     *      - Priority.NORMAL (default)
+     *      - Priority.PREFETCH
+     *
+     * @param priority (Priority) Value of Priority
+     * @return Current instance of the class
+     * @see Priority
+     */
+    public T priority(Priority priority) {
+        this.priority = priority;
+        return self();
+    }
+
+    /**
+     * Get the priority of the request
+     *
+     * @return Priority of the request
+     */
+    public Priority getPriority() {
+        return this.priority;
+    }
+
+    /**
+     * Set how long the response of this GET request is kept
+     * in the memory cache, when enabled. 0 skips the cache
+     *
+     * @param ttl (long) Time to live of the response in ms
+     * @return Current instance of the class
+     * @see MemoryCache
+     */
+    public T ttl(long ttl) {
+        this.ttl = ttl;
+        return self();
+    }
+
+    /**
+     * Handle a callback with coline objects response
+     *
+     * @param collback (Collback) Interface of successful 
+     *                 and errors requests
+     * @return Current instance of the class
+     * @see Collback
+     */
+    public T res(Collback collback) {
+        this.collback = collback;
+        return self();
+    }
+
+    /**
+     * Handle a callback for a custom object
+     *
+     * @param objcollback (ObjCollback) Interface of client
+     *                    object requests
+     * @return Current instance of the class
+     * @see Collback
+     */
+    public T res(ObjCollback objcollback) {
+        this.objcollback = objcollback;
+        return self();
+    }
+
+    /**
+     * Add the request to the default queue
+     * to execute it later
+     *
+     * @see Queue
+     */
+    public void queue() {
+        queue(Queue.DEFAULT);
+    }
+
+    /**
+     * Add the request to a named queue
+     * to execute it later
+     *
+     * @param name (String) Name of the queue
+     * @see Queue
+     */
+    public void queue(String name) {
+        Queue.init(name).add(AbstractColine.this);
+    }
+
+    /**
+     * Execute all Coline instances of
+     * the default queue
+     *
+     * @see Queue
+     */
+    public void send() {
+        send(Queue.DEFAULT);
+    }
+
+    /**
+     * Execute all Coline instances of
+     * a named queue
+     *
+     * @param name (String) Name of the queue
+     * @see Queue
+     */
+    public void send(String name) {
+        if ( logs ) Logs.d(CO_LINE, "Launch all request in the queue " + name);
+
+        Queue queue = Queue.getInstance(name);
+        if (queue == null) {
+            if ( logs ) Logs.e(CO_LINE, "The queue isn't created. Maybe you missed to add " +
+                        "a request with 'queue()'.");
+            return;
+        }
+
+        queue.start();
+    }
+
+    /**
+     * Executes a request in a worker of
+     * the shared dispatcher
+     *
+     * @see Dispatcher
+     */
+    public void exec() {
+        if ( logs ) Logs.d(CO_LINE, "...Request execution...");
+
+        final long id = Metrics.getInstance().nextRequestId();
+        final long queued = queuedAt != 0 ? queuedAt : System.nanoTime();
+        requestId = id;
+        queuedAt = 0;
+
+        // Serve hot GET responses from memory, without any worker
+        MemoryCache memory = "GET".equals(httpmethod) && download == null
+                ? MemoryCache.getInstalled() : null;
+        final long memoryTtl = memory == null ? 0 : (ttl >= 0 ? ttl : memory.getDefaultTtl());
+        final String memoryKey = memoryTtl > 0 ? memory.key(httpmethod, route,
+                headers != null ? headers.entrySet() : null) : null;
+        final Response hit = memoryKey != null ? memory.get(memoryKey) : null;
+        if (hit != null && objcollback == null) {
+            if ( logs ) Logs.d(CO_LINE, "Response served from the memory cache");
+
+            report(id, hit.status, CallMetrics.CacheStatus.MEMORY_HIT);
+            finishQueued();
+            returnResult(hit, null, null);
+            return;
+        }
+
+        // Fail fast without a worker while the server is unhealthy
+        if (CircuitBreaker.isOpen(getHost())) {
+            if ( logs ) Logs.e(CO_LINE, "Circuit breaker open for " + getHost());
+
+            report(id, 0, CallMetrics.CacheStatus.NONE);
+            deliver(null, null, new Error(0, CircuitBreaker.EXCEPTION, null,
+                    "The server is unavailable, the request was not sent"));
+            return;
+        }
+
+        // Share the response of an identical request in flight
+        if (hit == null && values == null && body == null && download == null
+                && ("GET".equals(httpmethod) || "HEAD".equals(httpmethod))) {
+            String key = InFlight.key(httpmethod, route,
+                    headers != null ? headers.entrySet() : null,
+                    objcollback != null ? Converter.getInstance().typeOf(objcollback.getClass()) : null);
+            if (!InFlight.join(key, this)) {
+                if ( logs ) Logs.d(CO_LINE, "Identical request in flight, wait for its response");
+
+                follower = key;
+                return;
+            }
+            leader = key;
+        }
+
+        call = Dispatcher.getInstance().submit(new Runnable() {
+            @Override
+            public void run() {
+                Request req = null;
+                try {
+                    req = new Request(httpmethod, route, headers, logs);
+                    req.addObserver(AbstractColine.this);
+                    req.setMetrics(id, queued);
+                    req.setValues(values);
+                    req.setBody(body);
+                    req.setDownload(download, segments);
+                    if (progress != null) {
+                        req.setProgress(deliveredProgress());
+                    }
+                    req.setGzip(gzip);
+                    req.setTimeouts(connectTimeout, readTimeout);
+                    req.setRetryPolicy(retryPolicy);
+                    req.setTransport(transport);
+                    if (objcollback != null) {
+                        req.setType(Converter.getInstance().typeOf(objcollback.getClass()));
+                    }
+                    if (hit != null) {
+                        req.handleMemoryHit(hit);
+                        return;
+                    }
+                    req.setMemoryCache(memoryKey, memoryTtl);
+                    req.makeRequest();
+                } catch (RuntimeException e) {
+                    if (req != null) {
+                        req.crashed(e);
+                    } else {
+                        if ( logs ) Logs.e(CO_LINE,
+                                "Unexpected error in the request: " + e.toString());
+                        deliver(null, null, new Error(0, e.getClass().getSimpleName(), e.toString(),
+                                "An unexpected error occurred in the request"));
+                    }
+                }
+            }
+        }, priority);
+
+        if (call == null) {
+            if ( logs ) Logs.e(CO_LINE, "The dispatcher refused the request, too many " +
+                        "pending requests.");
+
+            deliver(null, null, new Error(0, "RejectedExecutionException", null,
+                    "Too many pending requests in the dispatcher"));
+        }
+    }
+
+    /**
+     * Attach the instance to the queue which executes it
+     *
+     * @param queue (Queue) Queue of the request
+     */
+    protected void setQueue(Queue queue) {
+        this.queue = queue;
+        this.host = hostFromRoute(route);
+        this.queuedAt = System.nanoTime();
+    }
+
+    /**
+     * Get the identifier of the last execution, given
+     * to its metrics
+     *
+     * @return Identifier of the call, 0 if not executed
+     * @see Metrics
+     */
+    public long getRequestId() {
+        return requestId;
+    }
+
+    /**
+     * Get the host of the request, used to limit
+     * the requests running on the same server
+     *
+     * @return Host of the URL, empty if the URL is malformed
+     */
+    protected String getHost() {
+        if (host == null) {
+            host = hostFromRoute(route);
+        }
+        return host;
+    }
+
+    /**
+     * Update the instance with server response
+     *
+     * @param obs (Observable)
+     * @param obj (Object)
+     */
+    public void update(Observable obs, Object obj) {
+        if (obs instanceof Request) {
+            Request req = (Request) obs;
+            deliver(req.res, req.obj, req.err);
+        }
+    }
+
+    /**
+     * Private: return the result of the request, and a copy of it
+     * to the identical requests waiting for it. They are released
+     * first, so they get the result even if a callback throws
+     *
+     * @param res (Response) response object
+     * @param obj (Object) custom object
+     * @param err (Error) error object
+     */
+    private void deliver(Response res, Object obj, Error err) {
+        String key = takeLeader();
+        List<AbstractColine<?>> followers = key != null
+                ? InFlight.complete(key) : Collections.<AbstractColine<?>>emptyList();
+        try {
+            finishQueued();
+            returnResult(res, obj, err);
+        } finally {
+            for (AbstractColine<?> c : followers) {
+                c.follower = null;
+                try {
+                    c.finishQueued();
+                    c.returnResult(res != null ? res.copy() : null, obj,
+                            err != null ? err.copy() : null);
+                } catch (RuntimeException e) {
+                    if ( Logs.getInstance().getStatus() ) Logs.e(CO_LINE,
+                            "Unexpected error in an identical request: " + e.toString());
+                }
+            }
+        }
+    }
+
+    /**
+     * Private: report the metrics of a call answered
+     * without any worker
+     *
+     * @param id (long) Identifier of the call
+     * @param status (int) Status of the response, 0 for an error
+     * @param cacheStatus (CacheStatus) Origin of the response
+     */
+    private void report(long id, int status, CallMetrics.CacheStatus cacheStatus) {
+        if (!Metrics.getInstance().isEnabled()) {
+            return;
+        }
+        CallMetrics metrics = new CallMetrics(id, httpmethod, route);
+        metrics.status = status;
+        metrics.success = status != 0;
+        metrics.cacheStatus = cacheStatus;
+        metrics.total = 0;
+        Metrics.getInstance().report(metrics);
+    }
+
+    /**
+     * Private: get and reset the in-flight key of the
+     * request executed for the identical ones
+     *
+     * @return The key, or null if the request isn't shared
+     */
+    private synchronized String takeLeader() {
+        String key = leader;
+        leader = null;
+        return key;
+    }
+    
+    /**
+     * Private: release the slot of the request in its queue
+     */
+    private void finishQueued() {
+        Queue q = queue;
+        if (q != null) {
+            queue = null;
+            q.finished(this);
+        }
+    }
+
+    /**
+     * Private: return the host of an URL route
+     *
+     * @param route (String) Value of URL route
+     */
+    private static String hostFromRoute(String route) {
+        if (route == null) {
+            return "";
+        }
+        try {
+            String h = new URL(route).getHost();
+            return h == null ? "" : h.toLowerCase();
+        } catch (MalformedURLException e) {
+            return "";
+        }
+    }
+
+    /**
+     * Private: return the response with the executor given
+     * to deliverOn(), or the default one of the platform
+     *
+     * @param res (Response) response object
+     * @param obj (Object) custom object, already parsed
+     *            in the worker thread for an ObjCollback
+     * @param err (Error) error object
+     */
+    @SuppressWarnings("unchecked")
+    private void returnResult(final Response res, final Object obj, final Error err) {
+        if (collback == null && objcollback == null) 
+            return;
+        
+        if ( logs ) Logs.d(CO_LINE, "ReturnResult() called");
+        
+        if (isAlive()) {
+            deliverOn(executor, new Runnable() {
+                @Override
+                public void run() {
+                    if (objcollback != null) {
+                        objcollback.onResult(obj, err);
+                    } else {
+                        collback.onResult(res, err);
+                    }
+
+                    clear();
+                }
+            });
+        }
+    }
+
+    /**
+     * Private: forward the progress to the executor
+     * given to deliverOn(), or the default one
+     *
+     * @return Progress posting to the listener of the request
+     */
+    private Progress deliveredProgress() {
+        final Progress listener = progress;
+        final Executor target = executor;
+        return new Progress() {
+            @Override
+            public void onProgress(final long bytes, final long total) {
+                if (!isAlive()) {
+                    return;
+                }
+                deliverOn(target, new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onProgress(bytes, total);
+                    }
+                });
+            }
+        };
+    }
+
+    /**
+     * Private: run a result with an executor, or with the
+     * default one of the platform when none is given
+     *
+     * @param executor (Executor) Executor of the request (can be 'null')
+     * @param result (Runnable) Result to deliver
+     */
+    private void deliverOn(Executor executor, Runnable result) {
+        (executor != null ? executor : defaultExecutor()).execute(result);
+    }
+
+    /**
+     * Cancel the pending call or interrupt
+     * its running worker
+     *
+     * @see Future
+     */
+    public void cancel() {
+        if ( logs ) Logs.d(CO_LINE, "Interrupt background treatment");
+
+        if (call == null && queue == null && follower == null) {
+            if ( logs ) Logs.e(CO_LINE, "The background treatment is already null.");
+            return;
+        }
+        if (call != null) {
+            call.cancel(true);
+            call = null;
+        }
+        if (follower != null) {
+            InFlight.leave(follower, this);
+            follower = null;
+        }
+
+        // The identical requests waiting for this one are executed again
+        String key = takeLeader();
+        if (key != null) {
+            for (AbstractColine<?> c : InFlight.complete(key)) {
+                c.follower = null;
+                c.exec();
+            }
+        }
+        finishQueued();
+        clear();
+    }
+
+    /**
+     * Get the current status of debug logs
+     *
+     * @return boolean (true: activate, false: disable)
+     * @see Logs
+     */
+    public boolean getLogsStatus() {
+        return Logs.getInstance().getStatus();
+    }
+
+    /**
+     * Enable the debug logs
+     */
+    public static void enableDebug() {
+        Logs.getInstance().setStatus(true);
+    }
+
+    /**
+     * Disable the debug logs
+     */
+    public static void disableDebug() {
+        Logs.getInstance().setStatus(false);
+    }
+
+    /**
+     * Set the timeouts of every request
+     * (default: 7000ms to connect, 3000ms to read)
+     *
+     * @param connect (int) Connection timeout in ms
+     * @param read (int) Read timeout in ms
+     */
+    public static void setDefaultTimeouts(int connect, int read) {
+        Request.setDefaultTimeouts(connect, read);
+    }
+
+    /**
+     * Set the transport of every request, the previous one is
+     * shut down. Requests the transport doesn't support, files
+     * and progress listeners keep HttpURLConnection
+     *
+     * @param transport (Transport) Transport, null for HttpURLConnection (default)
+     * @see Transport
+     */
+    public static void setDefaultTransport(Transport transport) {
+        Request.setDefaultTransport(transport);
+    }
+
+    /**
+     * Set the retry policy of every request
+     * (default: 2 retries, from 250ms to 4s)
+     *
+     * @param policy (RetryPolicy) Policy, RetryPolicy.NONE to disable retries
+     * @see RetryPolicy
+     */
+    public static void setDefaultRetry(RetryPolicy policy) {
+        RetryPolicy.setDefault(policy);
+    }
+
+    /**
+     * Set the global budget of retries
+     * (default: 20% of the requests, 10 saved retries)
+     *
+     * @param ratio (double) Retries earned per request
+     * @param maxTokens (double) Retries which can be saved for a burst
+     * @see RetryBudget
+     */
+    public static void setRetryBudget(double ratio, double maxTokens) {
+        RetryBudget.getInstance().configure(ratio, maxTokens);
+    }
+
+    /**
+     * Set the listener of the metrics of every call: timings,
+     * sizes and cache status. It is called in the worker threads
+     *
+     * @param listener (MetricsListener) Listener, null to disable
+     * @see CallMetrics
+     */
+    public static void setMetricsListener(MetricsListener listener) {
+        Metrics.getInstance().setListener(listener);
+    }
+
+    /**
+     * Open a connection to a server in background, before the
+     * first request: DNS, TCP and TLS are then already done. It
+     * runs as a prefetch, with the default timeouts
+     *
+     * @param host (String) Host of the server, or its URL
+     * @see Connections
+     */
+    public static void preconnect(final String host) {
+        Dispatcher.getInstance().submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Connections.preconnect(host, Request.getDefaultConnectTimeout(),
+                            Request.getDefaultReadTimeout());
+                } catch (IOException e) {
+                    if ( Logs.getInstance().getStatus() ) Logs.e(CO_LINE,
+                            "Preconnect to " + host + " failed: " + e.toString());
+                }
+            }
+        }, Priority.PREFETCH);
+    }
+
+    /**
+     * Configure the reuse of connections: idle connections
+     * kept per host and how long they are kept
+     *
+     * @param maxConnections (int) Idle connections kept per host
+     * @param duration (long) Time in ms an idle connection is kept
+     * @see Connections
+     */
+    public static void keepAlive(int maxConnections, long duration) {
+        Connections.setKeepAlive(maxConnections, duration);
+    }
+
+    /**
+     * Send the plain HTTP requests without blocking: a few selector
+     * threads handle all the connections, and a worker is only used
+     * to prepare the request and to handle its response. HTTPS, files
+     * and progress listeners keep the blocking HttpURLConnection
+     *
+     * @param threads (int) Number of selector threads, at least 1
+     * @see NioTransport
+     */
+    public static void enableNonBlocking(int threads) {
+        try {
+            setDefaultTransport(new NioTransport(threads));
+        } catch (IOException e) {
+            if ( Logs.getInstance().getStatus() ) Logs.e(CO_LINE,
+                    "Non-blocking transport unavailable: " + e.toString());
+        }
+    }
+
+    /**
+     * Send all the requests with HttpURLConnection again,
+     * the requests in flight on the selector threads fail
+     */
+    public static void disableNonBlocking() {
+        if (Request.getDefaultTransport() instanceof NioTransport) {
+            setDefaultTransport(null);
+        }
+    }
+
+    /**
+     * Enable the disk cache of GET responses
+     *
+     * @param directory (File) Directory of the cache
+     * @param maxSize (long) Maximum size of the cache in bytes
+     * @see DiskCache
+     */
+    public static void enableCache(File directory, long maxSize) {
+        DiskCache.install(new DiskCache(directory, maxSize));
+    }
+
+    /**
+     * Disable the disk cache, the stored
+     * responses are kept on disk
+     */
+    public static void disableCache() {
+        DiskCache.install(null);
+    }
+
+    /**
+     * Enable the memory cache of GET responses, checked
+     * before dispatching the request
+     *
+     * @param maxBytes (long) Maximum size of the cache in bytes
+     * @param ttl (long) Default time to live of a response in ms
+     * @see MemoryCache
+     */
+    public static void enableMemoryCache(long maxBytes, long ttl) {
+        MemoryCache.install(new MemoryCache(maxBytes, ttl));
+    }
+
+    /**
+     * Disable the memory cache and
+     * release its responses
+     */
+    public static void disableMemoryCache() {
+        MemoryCache memory = MemoryCache.getInstalled();
+        MemoryCache.install(null);
+        if (memory != null) {
+            memory.clear();
+        }
+    }
+
+    /**
+     * Register a custom Gson type adapter used by every
+     * ObjCollback. Should be called once, before init()
+     *
+     * @param type (Type) Type handled by the adapter
+     * @param adapter (Object) TypeAdapter, JsonSerializer,
+     *                JsonDeserializer or InstanceCreator
+     * @see Converter
+     */
+    public static void registerTypeAdapter(Type type, Object adapter) {
+        Converter.getInstance().registerTypeAdapter(type, adapter);
+    }
+
+    /**
+     * Private: call finalize on the
+     * current instance
+     */
+    @SuppressWarnings("FinalizeCalledExplicitly")
+    private void clear() {
+        try {
+            finalize();
+        } catch (Throwable t) {
+            if ( logs ) Logs.e(CO_LINE, "Clear coline error: " + t.toString());
+        }
+    }
+
+    /**
+     * Protected: destroy all references, variables and elements
+     *
+     * @throws Throwable Throw an exception when destroy
+     * is compromised
+     */
+    protected void destroyColine() throws Throwable {
+        httpmethod = null;
+        route = null;
+        values = null;
+        body = null;
+        progress = null;
+        download = null;
+        executor = null;
+        transport = null;
+        collback = null;
+        objcollback = null;
+        logs = false;
+    }
+
+    /**
+     * Protected: override Object's finalize method
+     * and set the current instance to null
+     *
+     * @throws Throwable Throw an exception when destroy
+     * is compromised
+     */
+    @Override
+    protected void finalize() throws Throwable {
+        try {
+            destroyColine();
+        }
+        catch(Exception ex) {
+            if ( logs ) Logs.e(CO_LINE, "Destroying the current coline not working");
+        }
+        finally {
+            if ( logs ) Logs.d(CO_LINE, "Current coline is destroyed");
+            super.finalize();
+        }
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line;
+
+import com.fllo.co.line.builders.Logs;
+import com.fllo.co.line.builders.Priority;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class Dispatcher {
+
+    private static final String CO_LINE  = "Co.line";
+    private static final int DEFAULT_MAX_THREADS = 4;
+    private static final int DEFAULT_MAX_PENDING = 128;
+    private static final long DEFAULT_KEEP_ALIVE = 30;
+
+    private static Dispatcher instance = null;
+    private ThreadPoolExecutor executor;
+    private int maxThreads = DEFAULT_MAX_THREADS;
+    private int maxPending = DEFAULT_MAX_PENDING;
+    private long keepAlive = DEFAULT_KEEP_ALIVE;
+    private final AtomicLong sequence = new AtomicLong();
+    private final ArrayDeque<Call> parkedPrefetches = new ArrayDeque<>();
+    private int admittedPrefetches = 0;
+    private int admittedCalls = 0;
+
+    /**
+     * Protected: dispatcher's empty constructor.
+     *
+     */
+    protected Dispatcher() { }
+
+    /**
+     * Get the shared dispatcher used by every Coline instance.
+     * If null, create a new one
+     *
+     * @return An instance of dispatcher class
+     */
+    public static synchronized Dispatcher getInstance() {
+        if (instance == null) {
+            instance = new Dispatcher();
+        }
+        return instance;
+    }
+
+    /**
+     * Set the maximum number of worker threads. Applied
+     * immediately on the running pool
+     *
+     * @param maxThreads (int) Number of worker threads, at least 1
+     */
+    public synchronized void setMaxThreads(int maxThreads) {
+        if (maxThreads < 1) {
+            throw new IllegalArgumentException("maxThreads < 1: " + maxThreads);
+        }
+        this.maxThreads = maxThreads;
+        if (executor != null) {
+            if (maxThreads > executor.getMaximumPoolSize()) {
+                executor.setMaximumPoolSize(maxThreads);
+                executor.setCorePoolSize(maxThreads);
+            } else {
+                executor.setCorePoolSize(maxThreads);
+                executor.setMaximumPoolSize(maxThreads);
+            }
+            admitParked();
+        }
+    }
+
+    /**
+     * Get the maximum number of worker threads
+     *
+     * @return Number of worker threads
+     */
+    public synchronized int getMaxThreads() {
+        return this.maxThreads;
+    }
+
+    /**
+     * Set the maximum number of calls waiting for a free worker
+     *
+     * @param maxPending (int) Depth of the pending queue, at least 1
+     */
+    public synchronized void setMaxPending(int maxPending) {
+        if (maxPending < 1) {
+            throw new IllegalArgumentException("maxPending < 1: " + maxPending);
+        }
+        this.maxPending = maxPending;
+    }
+
+    /**
+     * Get the maximum number of calls waiting for a free worker
+     *
+     * @return Depth of the pending queue
+     */
+    public synchronized int getMaxPending() {
+        return this.maxPending;
+    }
+
+    /**
+     * Set how long an idle worker is kept before being stopped
+     *
+     * @param time (long) Idle timeout
+     * @param unit (TimeUnit) Unit of the timeout
+     */
+    public synchronized void setKeepAlive(long time, TimeUnit unit) {
+        if (unit.toSeconds(time) < 1) {
+            throw new IllegalArgumentException("keepAlive < 1s: " + time + " " + unit);
+        }
+        this.keepAlive = unit.toSeconds(time);
+        if (executor != null) {
+            executor.setKeepAliveTime(keepAlive, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Get the number of calls currently running or waiting
+     *
+     * @return Number of calls in the dispatcher
+     */
+    public synchronized int getQueuedCount() {
+        if (executor == null) {
+            return parkedPrefetches.size();
+        }
+        return executor.getActiveCount() + executor.getQueue().size()
+                + parkedPrefetches.size();
+    }
+
+    /**
+     * Submit a call to the worker pool with a normal priority
+     *
+     * @param call (Runnable) Work to execute in background
+     * @return Future of the call, or null if the pending queue is full
+     * or the dispatcher is shutting down
+     */
+    public Future<?> submit(Runnable call) {
+        return submit(call, Priority.NORMAL);
+    }
+
+    /**
+     * Submit a call to the worker pool. Waiting calls are started
+     * from the highest priority to the lowest, and prefetches never
+     * occupy every worker: one is always left for the other calls.
+     * With a single worker, prefetches wait until it is idle
+     *
+     * @param call (Runnable) Work to execute in background
+     * @param priority (Priority) Priority of the call
+     * @return Future of the call, or null if the pending queue is full
+     * or the dispatcher is shutting down
+     * @see Priority
+     */
+    public synchronized Future<?> submit(Runnable call, Priority priority) {
+        ThreadPoolExecutor pool = executor();
+        if (pool.getQueue().size() + parkedPrefetches.size() >= maxPending) {
+            return null;
+        }
+
+        Call c = new Call(call, priority, sequence.getAndIncrement());
+        if (priority == Priority.PREFETCH && !canAdmitPrefetch()) {
+            parkedPrefetches.add(c);
+            return c;
+        }
+        return admit(pool, c) ? c : null;
+    }
+
+    /**
+     * Stop accepting new calls and let the running and pending
+     * ones finish. The next submitted call starts a new pool
+     */
+    public synchronized void shutdown() {
+        if (executor != null) {
+            while (!parkedPrefetches.isEmpty()) {
+                admit(executor, parkedPrefetches.poll());
+            }
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    /**
+     * Shutdown the pool and wait for the current calls to finish
+     *
+     * @param timeout (long) Maximum time to wait
+     * @param unit (TimeUnit) Unit of the timeout
+     * @return true if every call is done, false if the timeout elapsed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitShutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        ThreadPoolExecutor current;
+        synchronized (this) {
+            current = executor;
+            shutdown();
+        }
+        return current == null || current.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Private: hand a call to the pool
+     *
+     * @param pool (ThreadPoolExecutor) Worker pool
+     * @param c (Call) Call to execute
+     * @return false if the pool refused the call
+     */
+    private boolean admit(ThreadPoolExecutor pool, Call c) {
+        try {
+            pool.execute(c);
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+        c.admitted = true;
+        if (c.priority == Priority.PREFETCH) {
+            admittedPrefetches += 1;
+        } else {
+            admittedCalls += 1;
+        }
+        return true;
+    }
+
+    /**
+     * Private: check if a prefetch can be handed to the pool,
+     * keeping one worker for the other priorities. With a single
+     * worker, prefetches wait until no other call is admitted
+     *
+     * @return true if a prefetch can be admitted now
+     */
+    private boolean canAdmitPrefetch() {
+        if (maxThreads > 1) {
+            return admittedPrefetches < maxThreads - 1;
+        }
+        return admittedPrefetches == 0 && admittedCalls == 0;
+    }
+
+    /**
+     * Private: release the slot of a finished or cancelled
+     * call and admit the parked prefetches which can start
+     *
+     * @param c (Call) Call which is done
+     */
+    private synchronized void callDone(Call c) {
+        if (!c.admitted) {
+            parkedPrefetches.remove(c);
+            return;
+        }
+
+        if (c.priority == Priority.PREFETCH) {
+            admittedPrefetches -= 1;
+        } else {
+            admittedCalls -= 1;
+        }
+        admitParked();
+    }
+
+    /**
+     * Private: admit the parked prefetches while the
+     * workers left to the other calls allow it
+     */
+    private void admitParked() {
+        while (executor != null && !parkedPrefetches.isEmpty() && canAdmitPrefetch()) {
+            Call next = parkedPrefetches.poll();
+            if (!next.isDone()) {
+                admit(executor, next);
+            }
+        }
+    }
+
+    /**
+     * Private: get the running pool, create it when needed
+     *
+     * @return The worker pool
+     */
+    private ThreadPoolExecutor executor() {
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(maxThreads, maxThreads,
+                    keepAlive, TimeUnit.SECONDS,
+                    new PriorityBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        private final AtomicInteger count = new AtomicInteger(1);
+
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "Co.line #" + count.getAndIncrement());
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    /**
+     * Call submitted to the pool, ordered by priority
+     * then by submission order
+     */
+    private final class Call extends FutureTask<Void> implements Comparable<Call> {
+
+        private final Priority priority;
+        private final long sequence;
+        private boolean admitted;
+
+        Call(Runnable runnable, Priority priority, long sequence) {
+            super(runnable, null);
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Call other) {
+            if (priority != other.priority) {
+                return priority.isHigherThan(other.priority) ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+
+        @Override
+        protected void done() {
+            callDone(this);
+            if (isCancelled()) {
+                return;
+            }
+            // Nobody waits on the future, so a crash would be silent
+            try {
+                get();
+            } catch (ExecutionException e) {
+                Logs.e(CO_LINE, "Uncaught error in a call: " + e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
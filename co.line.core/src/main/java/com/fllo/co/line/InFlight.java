@@ -0,0 +1,102 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public final class InFlight {
+
+    private static final HashMap<String, List<AbstractColine<?>>> calls = new HashMap<>();
+
+    private InFlight() { }
+
+    /**
+     * Build the key of an idempotent request: two requests
+     * with the same key share the same response
+     *
+     * @param method (String) HTTP method
+     * @param url (String) URL of the request
+     * @param headers (Iterable) Header properties (can be 'null')
+     * @param type (Type) Type of the custom object, null for a String response
+     * @return The key of the request
+     */
+    public static String key(String method, String url,
+                             Iterable<Map.Entry<String, Object>> headers, Type type) {
+        StringBuilder key = new StringBuilder(method).append(' ').append(url);
+        if (headers != null) {
+            TreeMap<String, String> sorted = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            for (Map.Entry<String, Object> header : headers) {
+                sorted.put(header.getKey(), String.valueOf(header.getValue()));
+            }
+            for (Map.Entry<String, String> header : sorted.entrySet()) {
+                key.append('\n').append(header.getKey()).append(':').append(header.getValue());
+            }
+        }
+        if (type != null) {
+            key.append('\n').append(type.toString());
+        }
+        return key.toString();
+    }
+
+    /**
+     * Join the identical request in flight, or become the
+     * request which will be executed for the others
+     *
+     * @param key (String) Key of the request
+     * @param request (AbstractColine) Coline's instance to execute
+     * @return true if the request must be executed, false if it
+     * waits for the response of the identical request in flight
+     */
+    static synchronized boolean join(String key, AbstractColine<?> request) {
+        List<AbstractColine<?>> followers = calls.get(key);
+        if (followers == null) {
+            calls.put(key, new ArrayList<AbstractColine<?>>());
+            return true;
+        }
+        followers.add(request);
+        return false;
+    }
+
+    /**
+     * Stop waiting for the identical request in flight
+     *
+     * @param key (String) Key of the request
+     * @param request (AbstractColine) Coline's instance which waits
+     */
+    static synchronized void leave(String key, AbstractColine<?> request) {
+        List<AbstractColine<?>> followers = calls.get(key);
+        if (followers != null) {
+            followers.remove(request);
+        }
+    }
+
+    /**
+     * Mark the executed request as done
+     *
+     * @param key (String) Key of the request
+     * @return The requests which wait for its response
+     */
+    static synchronized List<AbstractColine<?>> complete(String key) {
+        List<AbstractColine<?>> followers = calls.remove(key);
+        return followers != null ? followers : Collections.<AbstractColine<?>>emptyList();
+    }
+}
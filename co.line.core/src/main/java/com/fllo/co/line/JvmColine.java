@@ -0,0 +1,43 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line;
+
+/**
+ * Co.line for a plain JVM (server, desktop, tests):
+ * the callbacks run in the worker thread of the request,
+ * or with the executor given to deliverOn()
+ */
+public class JvmColine extends AbstractColine<JvmColine> {
+
+    /**
+     * Protected: jvm coline's empty constructor
+     */
+    protected JvmColine() { }
+
+    /**
+     * Initiate a new request
+     *
+     * @return Instance of the class
+     */
+    public static JvmColine init() {
+        return new JvmColine();
+    }
+
+    @Override
+    protected JvmColine self() {
+        return this;
+    }
+}
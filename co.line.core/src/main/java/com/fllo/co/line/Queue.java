@@ -0,0 +1,332 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line;
+
+import com.fllo.co.line.builders.Logs;
+import com.fllo.co.line.builders.Priority;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class Queue {
+
+    private static final String CO_LINE_QUEUE  = "Queue";
+
+    public static final String DEFAULT = "default";
+
+    private static final ConcurrentHashMap<String, Queue> queues = new ConcurrentHashMap<>();
+    private static volatile int maxRequests = 8;
+    private static volatile int maxRequestsPerHost = 4;
+
+    private final String name;
+    private final boolean logs;
+    private final ConcurrentLinkedQueue<AbstractColine<?>>[] waiting;
+    private final Set<AbstractColine<?>> running =
+            Collections.newSetFromMap(new ConcurrentHashMap<AbstractColine<?>, Boolean>());
+    private final ConcurrentHashMap<String, AtomicInteger> runningPerHost =
+            new ConcurrentHashMap<>();
+    private final AtomicInteger runningPrefetches = new AtomicInteger();
+    private final AtomicInteger pendingRequests = new AtomicInteger();
+    private final Object promoteLock = new Object();
+    private volatile boolean used = false;
+    private volatile boolean started = false;
+
+    /**
+     * Set the maximum number of requests of a queue
+     * running at the same time
+     *
+     * @param max (int) Global in-flight limit, at least 1
+     */
+    public static void setMaxRequests(int max) {
+        if (max < 1) {
+            throw new IllegalArgumentException("max < 1: " + max);
+        }
+        maxRequests = max;
+    }
+
+    /**
+     * Set the maximum number of requests of a queue
+     * running at the same time on the same host
+     *
+     * @param max (int) Per-host in-flight limit, at least 1
+     */
+    public static void setMaxRequestsPerHost(int max) {
+        if (max < 1) {
+            throw new IllegalArgumentException("max < 1: " + max);
+        }
+        maxRequestsPerHost = max;
+    }
+
+    /**
+     * Initiate the default queue and prepare to get multiple
+     * Coline objects
+     *
+     * @return Instance of the default queue
+     */
+    public static Queue init() {
+        return init(DEFAULT);
+    }
+
+    /**
+     * Initiate a named queue and prepare to get multiple
+     * Coline objects. Each name is an independent queue
+     *
+     * @param name (String) Name of the queue
+     * @return Instance of the named queue
+     */
+    public static Queue init(String name) {
+        Queue queue = queues.get(name);
+        if (queue == null) {
+            Queue created = new Queue(name);
+            queue = queues.putIfAbsent(name, created);
+            if (queue == null) {
+                queue = created;
+                if (queue.logs) Logs.d(CO_LINE_QUEUE, "Queue initialization: " + name);
+            }
+        }
+        return queue;
+    }
+
+    /**
+     * Get the default queue without creating it
+     *
+     * @return The default queue, or null if not created
+     */
+    public static Queue getInstance() {
+        return getInstance(DEFAULT);
+    }
+
+    /**
+     * Get a named queue without creating it
+     *
+     * @param name (String) Name of the queue
+     * @return The named queue, or null if not created
+     */
+    public static Queue getInstance(String name) {
+        return queues.get(name);
+    }
+
+    /**
+     * Private: create an empty queue
+     *
+     * @param name (String) Name of the queue
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Queue(String name) {
+        this.name = name;
+        this.logs = Logs.getInstance().getStatus();
+        Priority[] priorities = Priority.values();
+        this.waiting = new ConcurrentLinkedQueue[priorities.length];
+        for (int i = 0; i < priorities.length; ++i) {
+            this.waiting[i] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    /**
+     * Get the name of the queue
+     *
+     * @return Name of the queue
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Save the current request into the queue
+     *
+     * @param request (AbstractColine) Coline's instance which will be
+     *                added to the queue
+     */
+    public void add(AbstractColine<?> request) {
+        pendingRequests.incrementAndGet();
+        request.setQueue(this);
+        waiting[request.getPriority().ordinal()].add(request);
+        this.used = true;
+        if ( logs ) Logs.d(CO_LINE_QUEUE, "New request added to the queue " + name);
+
+        if ( started ) {
+            execute(promote());
+        }
+    }
+
+    /**
+     * Start the execution of the requests in queue, from the
+     * highest priority to the lowest, within the global and
+     * per-host in-flight limits. The next request is launched
+     * as soon as one is finished
+     */
+    public void start() {
+        if ( logs ) Logs.d(CO_LINE_QUEUE, "Start execution of pending requests in " + name);
+
+        this.started = true;
+        execute(promote());
+    }
+
+    /**
+     * Release the slot of a request which is done or
+     * cancelled, then launch the next waiting ones
+     *
+     * @param request (AbstractColine) Coline's instance which is finished
+     */
+    public void finished(AbstractColine<?> request) {
+        boolean released = false;
+        if (running.remove(request)) {
+            if (request.getPriority() == Priority.PREFETCH) {
+                runningPrefetches.decrementAndGet();
+            }
+            AtomicInteger count = runningPerHost.get(request.getHost());
+            if (count != null) {
+                count.decrementAndGet();
+            }
+            released = true;
+        } else if (waiting[request.getPriority().ordinal()].remove(request)) {
+            released = true;
+        }
+
+        if (released && pendingRequests.decrementAndGet() == 0 && started) {
+            if ( logs ) Logs.d(CO_LINE_QUEUE, "No pending requests left, remove the queue " + name);
+            queues.remove(name, this);
+        }
+
+        if ( started ) {
+            execute(promote());
+        }
+    }
+
+    /**
+     * Get the number of pending requests in the queue
+     *
+     * @return true if requests are waiting or running
+     */
+    public boolean getPending() {
+        return pendingRequests.get() > 0;
+    }
+
+    /**
+     * Get the current state of the queue: if it's used or not
+     *
+     * @return State of the current queue
+     */
+    public boolean getState() {
+        return this.used;
+    }
+
+    /**
+     * Remove a named queue. Its running requests still
+     * finish, the waiting ones are dropped
+     *
+     * @param name (String) Name of the queue
+     */
+    public static void destroy(String name) {
+        Queue queue = queues.remove(name);
+        if (queue != null) {
+            queue.started = false;
+            for (ConcurrentLinkedQueue<AbstractColine<?>> requests : queue.waiting) {
+                requests.clear();
+            }
+        }
+    }
+
+    /**
+     * Private: select the waiting requests which can be launched
+     * while the global and per-host limits allow it
+     *
+     * @return Requests to execute, outside of the promotion lock
+     */
+    private List<AbstractColine<?>> promote() {
+        List<AbstractColine<?>> ready = new ArrayList<>();
+        synchronized (promoteLock) {
+            for (ConcurrentLinkedQueue<AbstractColine<?>> requests : waiting) {
+                Iterator<AbstractColine<?>> it = requests.iterator();
+                while (it.hasNext() && running.size() < maxRequests) {
+                    AbstractColine<?> c = it.next();
+                    if (c.getPriority() == Priority.PREFETCH && !canRunPrefetch()) {
+                        break;
+                    }
+
+                    AtomicInteger count = hostCount(c.getHost());
+                    if (count.get() >= maxRequestsPerHost) {
+                        continue;
+                    }
+
+                    if (!requests.remove(c)) {
+                        continue;
+                    }
+                    count.incrementAndGet();
+                    if (c.getPriority() == Priority.PREFETCH) {
+                        runningPrefetches.incrementAndGet();
+                    }
+                    running.add(c);
+                    ready.add(c);
+                }
+            }
+        }
+        return ready;
+    }
+
+    /**
+     * Private: check if a prefetch can start, keeping one slot
+     * for the other requests. With a single slot, a prefetch
+     * only starts when no other request is running
+     *
+     * @return true if a waiting prefetch can be launched
+     */
+    private boolean canRunPrefetch() {
+        int max = maxRequests;
+        if (max > 1) {
+            return runningPrefetches.get() < max - 1;
+        }
+        return running.isEmpty();
+    }
+
+    /**
+     * Private: get the in-flight counter of a host
+     *
+     * @param host (String) Host of the request
+     * @return Counter of running requests on this host
+     */
+    private AtomicInteger hostCount(String host) {
+        AtomicInteger count = runningPerHost.get(host);
+        if (count == null) {
+            AtomicInteger created = new AtomicInteger();
+            count = runningPerHost.putIfAbsent(host, created);
+            if (count == null) {
+                count = created;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Private: execute the requests selected by promote()
+     *
+     * @param ready (List) Requests to execute
+     */
+    private void execute(List<AbstractColine<?>> ready) {
+        for (AbstractColine<?> c : ready) {
+            if ( logs ) Logs.d(CO_LINE_QUEUE, "Execute request in queue " + name +
+                    " (rf. " + c.toString() + ")");
+
+            c.exec();
+        }
+    }
+}
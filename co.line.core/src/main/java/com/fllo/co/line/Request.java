@@ -0,0 +1,1409 @@
+package com.fllo.co.line;
+
+import com.fllo.co.line.bodies.Body;
+import com.fllo.co.line.bodies.FormBody;
+import com.fllo.co.line.builders.Converter;
+import com.fllo.co.line.builders.Logs;
+import com.fllo.co.line.builders.Priority;
+import com.fllo.co.line.cache.CacheEntry;
+import com.fllo.co.line.cache.DiskCache;
+import com.fllo.co.line.cache.MemoryCache;
+import com.fllo.co.line.callbacks.Progress;
+import com.fllo.co.line.io.BodyReader;
+import com.fllo.co.line.io.BufferPool;
+import com.fllo.co.line.io.Connections;
+import com.fllo.co.line.io.CountingInputStream;
+import com.fllo.co.line.io.CountingOutputStream;
+import com.fllo.co.line.io.Encodings;
+import com.fllo.co.line.io.FileDownload;
+import com.fllo.co.line.io.SegmentedDownload;
+import com.fllo.co.line.metrics.CallMetrics;
+import com.fllo.co.line.metrics.Metrics;
+import com.fllo.co.line.metrics.Traffic;
+import com.fllo.co.line.policies.CircuitBreaker;
+import com.fllo.co.line.policies.RetryBudget;
+import com.fllo.co.line.policies.RetryPolicy;
+import com.fllo.co.line.results.Error;
+import com.fllo.co.line.results.Response;
+import com.fllo.co.line.transport.Transport;
+import com.fllo.co.line.transport.TransportCallback;
+import com.fllo.co.line.transport.TransportRequest;
+import com.fllo.co.line.transport.TransportResponse;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Observable;
+import java.util.zip.GZIPOutputStream;
+
+public class Request extends Observable {
+
+    private static final String CO_LINE  = "Co.line";
+    private static final int GZIP_MIN_SIZE = 1024;
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+    private static volatile int defaultConnectTimeout = 7000;
+    private static volatile int defaultReadTimeout = 3000;
+    private static volatile Transport defaultTransport = null;
+
+    protected Error err;
+    protected Response res;
+    protected Object obj;
+    private String method;
+    private String route;
+    private Map<String, Object> headers;
+    private Body body;
+    private Progress progress;
+    private FileDownload download;
+    private int segments;
+    private Type type;
+    private String memoryKey;
+    private long memoryTtl;
+    private boolean memoryStorable = true;
+    private boolean gzip;
+    private int connectTimeout;
+    private int readTimeout;
+    private RetryPolicy retryPolicy;
+    private Transport transport;
+    private HttpURLConnection connection;
+    private CallMetrics metrics;
+    private final long started = System.nanoTime();
+    private boolean logs;
+    private volatile boolean published;
+
+    /**
+     * Class to do the request to the server
+     *
+     * @param method (String) HttpMethod verb using by the request
+     * @param route (String) URL of the request
+     * @param headers (Map) Header properties as
+     *                "Content-type" or "Authorization"
+     * @param logs (boolean) Current state of Logs
+     */
+    public Request(String method, String route,
+                   Map<String, Object> headers, boolean logs) {
+        this.method = method;
+        this.route = route;
+        this.headers = headers;
+        this.logs = logs;
+        // Identified by setMetrics(), with the id given in exec()
+        this.metrics = new CallMetrics(0, method, route);
+    }
+
+    /**
+     * Protected: identify the call in its metrics
+     *
+     * @param requestId (long) Identifier of the call
+     * @param queuedAt (long) System.nanoTime() when the call was queued
+     * @see Metrics
+     */
+    protected void setMetrics(long requestId, long queuedAt) {
+        this.metrics = new CallMetrics(requestId, method, route);
+        this.metrics.queueWait = started - queuedAt;
+    }
+
+    /**
+     * Protected: get all values from {Map values} and prepare
+     * a URL-encoded form body with all parameters given for the request
+     *
+     * @param values (Map) Body values
+     * @see FormBody
+     */
+    protected void setValues(Map<String, Object> values) {
+        if (values != null && values.size() > 0) {
+            body = new FormBody(values.entrySet());
+            if ( logs ) Logs.d(CO_LINE, "Values added to the request body: " + body.toString());
+        }
+    }
+
+    /**
+     * Protected: set the body of the request, streamed to the
+     * connection when the request is sent
+     *
+     * @param body (Body) Body of the request (can be 'null')
+     * @see Body
+     */
+    protected void setBody(Body body) {
+        if (body != null) {
+            this.body = body;
+        }
+    }
+
+    /**
+     * Protected: set the listener of the upload progress,
+     * called from the current thread
+     *
+     * @param progress (Progress) Upload listener (can be 'null')
+     */
+    protected void setProgress(Progress progress) {
+        this.progress = progress;
+    }
+
+    /**
+     * Protected: write a successful body into a file instead
+     * of a String. An interrupted download is resumed with
+     * a Range request when the server allows it
+     *
+     * @param file (File) Destination of the body (can be 'null')
+     * @param segments (int) Number of byte ranges downloaded
+     *                 concurrently, 1 for a single connection
+     * @see FileDownload
+     * @see SegmentedDownload
+     */
+    protected void setDownload(File file, int segments) {
+        this.download = file != null ? new FileDownload(file) : null;
+        this.segments = segments;
+    }
+
+    /**
+     * Protected: set the type of the custom object expected
+     * by an ObjCollback. A successful response is then parsed
+     * from the connection stream in the current thread
+     *
+     * @param type (Type) Type of the custom object, null for
+     *             a String response
+     */
+    protected void setType(Type type) {
+        this.type = type;
+    }
+
+    /**
+     * Set the timeouts of the requests without their own
+     *
+     * @param connect (int) Connection timeout in ms
+     * @param read (int) Read timeout in ms
+     */
+    public static void setDefaultTimeouts(int connect, int read) {
+        if (connect <= 0 || read <= 0) {
+            throw new IllegalArgumentException("Timeouts must be > 0: " + connect + ", " + read);
+        }
+        defaultConnectTimeout = connect;
+        defaultReadTimeout = read;
+    }
+
+    /**
+     * Get the connection timeout of the requests without their own
+     *
+     * @return Connection timeout in ms
+     */
+    static int getDefaultConnectTimeout() {
+        return defaultConnectTimeout;
+    }
+
+    /**
+     * Get the read timeout of the requests without their own
+     *
+     * @return Read timeout in ms
+     */
+    static int getDefaultReadTimeout() {
+        return defaultReadTimeout;
+    }
+
+    /**
+     * Protected: set the timeouts of the request
+     *
+     * @param connect (int) Connection timeout in ms, 0 for the default one
+     * @param read (int) Read timeout in ms, 0 for the default one
+     */
+    protected void setTimeouts(int connect, int read) {
+        this.connectTimeout = connect;
+        this.readTimeout = read;
+    }
+
+    /**
+     * Protected: set the retry policy of the request
+     *
+     * @param policy (RetryPolicy) Policy, null for the default one
+     */
+    protected void setRetryPolicy(RetryPolicy policy) {
+        this.retryPolicy = policy;
+    }
+
+    /**
+     * Set the transport of all requests, the previous one is
+     * shut down. By default (null), requests use HttpURLConnection
+     *
+     * @param transport (Transport) Transport to use (can be 'null')
+     * @see Transport
+     */
+    public static void setDefaultTransport(Transport transport) {
+        Transport previous = defaultTransport;
+        defaultTransport = transport;
+        if (previous != null && previous != transport) {
+            previous.shutdown();
+        }
+    }
+
+    /**
+     * Get the transport of all requests
+     *
+     * @return The transport, or null for HttpURLConnection
+     */
+    public static Transport getDefaultTransport() {
+        return defaultTransport;
+    }
+
+    /**
+     * Protected: set the transport of this request
+     *
+     * @param transport (Transport) Transport to use, null for the default one
+     */
+    protected void setTransport(Transport transport) {
+        this.transport = transport;
+    }
+
+    /**
+     * Protected: compress the body with gzip when it is
+     * bigger than 1 KB
+     *
+     * @param gzip (boolean) true to compress the body
+     */
+    protected void setGzip(boolean gzip) {
+        this.gzip = gzip;
+    }
+
+    /**
+     * Protected: store the successful response of the request
+     * in the memory cache
+     *
+     * @param key (String) Key of the request in the memory cache
+     * @param ttl (long) Time to live of the response in ms
+     */
+    protected void setMemoryCache(String key, long ttl) {
+        this.memoryKey = key;
+        this.memoryTtl = ttl;
+    }
+
+    /**
+     * Protected: notify a response found in the memory cache,
+     * parsed in the current thread for an ObjCollback
+     *
+     * @param cached (Response) Response from the memory cache
+     */
+    protected void handleMemoryHit(Response cached) {
+        metrics.cacheStatus = CallMetrics.CacheStatus.MEMORY_HIT;
+        if (type != null) {
+            parseObject(new StringReader(cached.body), cached.status);
+        } else {
+            setResponseResult(cached.body, cached.status);
+        }
+    }
+
+    /**
+     * Protected: do the request with HttpURLConnection
+     *
+     * @see HttpURLConnection
+     */
+    protected void makeRequest() {
+        int NO_STATUS = 0;
+
+        URL url;
+
+        // Init URL
+        try {
+            if ( logs ) Logs.d(CO_LINE, "URL: " + route);
+
+            url = new URL( route );
+        } catch (MalformedURLException e) {
+            if ( logs ) Logs.e(CO_LINE, "error in route: " + e.toString());
+
+            setErrorResult("MalformedURLException", e.toString(),
+                    "An error occurred when trying to get URL", NO_STATUS);
+            return;
+        }
+
+        // Split a large download in concurrent byte ranges
+        if (download != null && segments > 1 && "GET".equals(method)
+                && download.resumeFrom() == 0
+                && !CircuitBreaker.isOpen(url.getHost().toLowerCase())
+                && downloadSegments(url)) {
+            return;
+        }
+
+        // Serve fresh responses from the disk cache
+        DiskCache cache = "GET".equals(method) && download == null
+                ? DiskCache.getInstalled() : null;
+        CacheEntry cached = cache != null ? cache.get(route) : null;
+        if (cached != null && cached.isFresh() && !noCacheRequested()) {
+            if ( logs ) Logs.d(CO_LINE, "Response served from the disk cache");
+
+            metrics.cacheStatus = CallMetrics.CacheStatus.DISK_HIT;
+            handleCached(cache, cached);
+            return;
+        }
+        if (cache != null || memoryKey != null) {
+            metrics.cacheStatus = CallMetrics.CacheStatus.MISS;
+        }
+        RetryBudget.getInstance().deposit();
+
+        // Hand the request to the transport, without holding a worker
+        Transport async = transport != null ? transport : defaultTransport;
+        if (async != null && canSendWith(async, url)) {
+            sendWith(async, url, cache, cached);
+            return;
+        }
+
+        // Do connection, retried with a backoff for idempotent methods
+        CircuitBreaker breaker = CircuitBreaker.forHost(url.getHost().toLowerCase());
+        HttpURLConnection http;
+        InputStream inputStream;
+        int status;
+        for (int attempt = 0; ; ++attempt) {
+            // Fail fast while the server is unhealthy
+            if (!breaker.allowRequest()) {
+                if ( logs ) Logs.e(CO_LINE, "Circuit breaker open for " + url.getHost());
+
+                setErrorResult(CircuitBreaker.EXCEPTION, null,
+                        "The server is unavailable, the request was not sent", NO_STATUS);
+                return;
+            }
+
+            if ( logs ) Logs.d(CO_LINE, "Do connection...");
+
+            metrics.attempts = attempt + 1;
+            status = NO_STATUS;
+            try {
+                http = connect(url, cache, cached);
+            } catch (RuntimeException e) {
+                breaker.releaseProbe();
+                throw e;
+            } catch (IOException e) {
+                if ( logs ) Logs.e(CO_LINE, "Error in http url connection: " + e.toString());
+
+                breaker.onFailure();
+                if (retry(attempt)) {
+                    continue;
+                }
+                setErrorResult("IOException", e.toString(),
+                        "Error in http url connection", NO_STATUS);
+                return;
+            }
+
+            if ( logs ) Logs.d(CO_LINE, "Connection etablished");
+
+            // Get response
+            try {
+                long waiting = System.nanoTime();
+                status = http.getResponseCode();
+                metrics.firstByte = System.nanoTime() - waiting;
+                if ( logs ) Logs.d(CO_LINE, "Status response: " + status);
+
+                if (status >= 200 && status < 400) {
+                    inputStream = http.getInputStream();
+                } else {
+                    inputStream = http.getErrorStream();
+                }
+
+            } catch (RuntimeException e) {
+                http.disconnect();
+                breaker.releaseProbe();
+                throw e;
+            } catch (IOException e) {
+                if ( logs ) Logs.e(CO_LINE, "Error when getting server response: " + e.toString());
+
+                http.disconnect();
+                breaker.onFailure();
+                if (retry(attempt)) {
+                    continue;
+                }
+                setErrorResult("IOException", e.toString(),
+                        "An error occurred when trying to get server response", status);
+                return;
+            }
+
+            if (status >= 500) {
+                breaker.onFailure();
+            } else {
+                breaker.onSuccess();
+            }
+            if (isRetryableStatus(status) && retry(attempt)) {
+                release(inputStream);
+                continue;
+            }
+            break;
+        }
+
+        if (inputStream == null) {
+            http.disconnect();
+            setErrorResult("NullPointerException", null,
+                    "An error occurred when trying to get server response", status);
+            return;
+        }
+
+        // Not modified: the stored response is still valid
+        if (status == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+            if ( logs ) Logs.d(CO_LINE, "Response revalidated from the disk cache");
+
+            metrics.cacheStatus = CallMetrics.CacheStatus.REVALIDATED;
+            release(inputStream);
+            cached.refresh(http);
+            cache.update(cached);
+            handleCached(cache, cached);
+            return;
+        }
+
+        // Write the body into a file
+        if (download != null && (status == HttpURLConnection.HTTP_OK
+                || status == HttpURLConnection.HTTP_PARTIAL || status == HTTP_RANGE_NOT_SATISFIABLE)) {
+            handleDownload(http, inputStream, status);
+            return;
+        }
+
+        CacheEntry entry = cache != null && status == HttpURLConnection.HTTP_OK
+                ? CacheEntry.fromResponse(route, http) : null;
+        if (memoryKey != null) {
+            memoryStorable = CacheEntry.isStorable(http.getHeaderFields(), true);
+        }
+        handleStream(inputStream, http.getContentEncoding(), http.getContentType(),
+                contentLength(http), cache, entry, status);
+    }
+
+    /**
+     * Private: decompress the body, counting the bytes on
+     * both sides, then store and handle the response
+     *
+     * @param inputStream (InputStream) Body as received
+     * @param contentEncoding (String) Content-Encoding of the body (can be 'null')
+     * @param contentType (String) Content-Type of the body (can be 'null')
+     * @param length (long) Length of the body, -1 if unknown
+     * @param cache (DiskCache) Installed cache (can be 'null')
+     * @param entry (CacheEntry) Entry to store the body (can be 'null')
+     * @param status (int) HTTP response status
+     */
+    private void handleStream(InputStream inputStream, String contentEncoding,
+                              String contentType, long length, DiskCache cache,
+                              CacheEntry entry, int status) {
+        CountingInputStream wire = new CountingInputStream(inputStream);
+        CountingInputStream decoded;
+        try {
+            InputStream in = Encodings.decode(wire, contentEncoding);
+            if (in != wire) {
+                length = -1;
+            }
+            decoded = new CountingInputStream(in);
+        } catch (IOException e) {
+            if ( logs ) Logs.e(CO_LINE, "Error when decoding result: " + e.toString());
+
+            release(wire);
+            setErrorResult("IOException", e.toString(),
+                    "An error occurred when reading server response", status);
+            return;
+        }
+
+        try {
+            handleResponse(cache, entry, decoded, contentType, status, length);
+        } finally {
+            received(wire.getCount(), decoded.getCount());
+        }
+    }
+
+    /**
+     * Private: store a cacheable response, then handle it
+     *
+     * @param cache (DiskCache) Installed cache (can be 'null')
+     * @param entry (CacheEntry) Entry to store the body (can be 'null')
+     * @param inputStream (InputStream) Decoded body of the response
+     * @param contentType (String) Content-Type of the body (can be 'null')
+     * @param status (int) HTTP response status
+     * @param length (long) Length of the body, -1 if unknown
+     */
+    private void handleResponse(DiskCache cache, CacheEntry entry, InputStream inputStream,
+                                String contentType, int status, long length) {
+        if (entry != null) {
+            BodyReader.Bytes bytes;
+            long reading = System.nanoTime();
+            try {
+                bytes = BodyReader.readBytes(inputStream, length);
+            } catch (IOException e) {
+                if ( logs ) Logs.e(CO_LINE, "Error when reading result: " + e.toString());
+
+                setErrorResult("IOException", e.toString(),
+                        "An error occurred when reading server response", status);
+                return;
+            } finally {
+                release(inputStream);
+            }
+
+            metrics.bodyRead = System.nanoTime() - reading;
+            cache.put(entry, bytes.data, bytes.length);
+            handleBody(new ByteArrayInputStream(bytes.data, 0, bytes.length),
+                    status, contentType, bytes.length);
+            return;
+        }
+
+        handleBody(inputStream, status, contentType, length);
+    }
+
+    /**
+     * Private: write the body into the download file, appending
+     * to the partial file when the server sent the missing range
+     *
+     * @param http (HttpURLConnection) Current connection
+     * @param inputStream (InputStream) Body of the response
+     * @param status (int) 200, 206 or 416
+     */
+    private void handleDownload(HttpURLConnection http, InputStream inputStream, int status) {
+        long from = download.resumeFrom();
+        long[] range = FileDownload.contentRange(http.getHeaderField("Content-Range"));
+
+        // The requested range starts at the end of the file: nothing left
+        if (status == HTTP_RANGE_NOT_SATISFIABLE) {
+            release(inputStream);
+            if (from > 0 && range != null && range[2] == from) {
+                completeDownload(status);
+            } else {
+                download.discard();
+                setErrorResult("IOException", null,
+                        "The partial download cannot be resumed", status);
+            }
+            return;
+        }
+
+        boolean append = status == HttpURLConnection.HTTP_PARTIAL;
+        if (append && (range == null || range[0] != from)) {
+            release(inputStream);
+            download.discard();
+            setErrorResult("IOException", "Content-Range: " + http.getHeaderField("Content-Range"),
+                    "The server sent an unexpected range", status);
+            return;
+        }
+        if ( logs ) Logs.d(CO_LINE, append ? "Resume the download from " + from
+                : "Download into " + download.getTarget());
+
+        long total = append ? range[2] : contentLength(http);
+        String etag = http.getHeaderField("ETag");
+        String validator = etag != null && !etag.startsWith("W/")
+                ? etag : http.getHeaderField("Last-Modified");
+
+        CountingInputStream wire = new CountingInputStream(inputStream);
+        long written;
+        long reading = System.nanoTime();
+        try {
+            written = download.write(wire, append, validator, total, progress);
+            metrics.bodyRead = System.nanoTime() - reading;
+        } catch (IOException e) {
+            if ( logs ) Logs.e(CO_LINE, "Error when downloading: " + e.toString());
+
+            http.disconnect();
+            setErrorResult("IOException", e.toString(),
+                    "An error occurred when downloading the file", status);
+            return;
+        } finally {
+            received(wire.getCount(), wire.getCount());
+        }
+        release(wire);
+
+        if (total >= 0 && written != total) {
+            setErrorResult("IOException", written + " of " + total + " bytes",
+                    "The download is incomplete", status);
+            return;
+        }
+        completeDownload(status);
+    }
+
+    /**
+     * Private: rename the downloaded file and return it
+     */
+    private void completeDownload(int status) {
+        try {
+            download.complete();
+        } catch (IOException e) {
+            setErrorResult("IOException", e.toString(),
+                    "An error occurred when saving the file", status);
+            return;
+        }
+        setFileResult(download.getTarget(), status);
+    }
+
+    /**
+     * Private: download the file in segments, after a HEAD
+     * request. Fall back to a single connection when the
+     * server does not accept ranges or the file is small
+     *
+     * @param url (URL) URL of the file
+     * @return true if the result is set, false to fall back
+     */
+    private boolean downloadSegments(URL url) {
+        Map<String, String> properties = new HashMap<>();
+        if (headers != null) {
+            for (Map.Entry<String, Object> entry : headers.entrySet()) {
+                properties.put(entry.getKey(), String.valueOf(entry.getValue()));
+            }
+        }
+        SegmentedDownload segmented = new SegmentedDownload(url, properties,
+                connectTimeout > 0 ? connectTimeout : defaultConnectTimeout,
+                readTimeout > 0 ? readTimeout : defaultReadTimeout, download);
+        segmented.setRetryPolicy(retryPolicy);
+
+        try {
+            if (!segmented.probe()) {
+                if ( logs ) Logs.d(CO_LINE, "No segments, ranges not supported or file too small");
+                return false;
+            }
+        } catch (IOException e) {
+            if ( logs ) Logs.e(CO_LINE, "Error in HEAD request: " + e.toString());
+            return false;
+        }
+
+        if ( logs ) Logs.d(CO_LINE, "Download " + segmented.getLength() + " bytes in "
+                + segments + " segments");
+
+        try {
+            long reading = System.nanoTime();
+            File file = segmented.run(segments, progress);
+            metrics.bodyRead = System.nanoTime() - reading;
+            metrics.responseBytes = segmented.getLength();
+            metrics.decodedBytes = segmented.getLength();
+            setFileResult(file, HttpURLConnection.HTTP_OK);
+        } catch (IOException e) {
+            if ( logs ) Logs.e(CO_LINE, "Error when downloading: " + e.toString());
+
+            download.discard();
+            setErrorResult("IOException", e.toString(),
+                    "An error occurred when downloading the file", 0);
+        } catch (InterruptedException e) {
+            // The request is cancelled
+            Thread.currentThread().interrupt();
+            download.discard();
+            setErrorResult("InterruptedException", e.toString(),
+                    "The download was cancelled", 0);
+        }
+        return true;
+    }
+
+    /**
+     * Private: open the connection, set its properties
+     * and send the body. Disconnect on failure
+     *
+     * @param url (URL) URL of the request
+     * @param cache (DiskCache) Installed cache (can be 'null')
+     * @param cached (CacheEntry) Stored response to revalidate (can be 'null')
+     * @return The connection, ready to get the response
+     * @throws IOException if the connection or the body fails
+     */
+    private HttpURLConnection connect(URL url, DiskCache cache,
+                                      CacheEntry cached) throws IOException {
+        HttpURLConnection http = (HttpURLConnection) url.openConnection();
+        connection = http;
+        try {
+            // Adding header properties
+            if (headers != null && headers.size() > 0) {
+                for (Map.Entry<String, Object> entry : headers.entrySet()) {
+                    http.setRequestProperty(entry.getKey(), String.valueOf(entry.getValue()));
+                }
+            }
+            if (http.getRequestProperty("Content-Type") == null) {
+                http.setRequestProperty("Content-Type",
+                        body != null ? body.contentType() : FormBody.CONTENT_TYPE);
+            }
+            if (download != null) {
+                // Ranges apply to the raw bytes, never compress them
+                http.setRequestProperty("Accept-Encoding", "identity");
+                long from = download.resumeFrom();
+                if (from > 0) {
+                    http.setRequestProperty("Range", "bytes=" + from + "-");
+                    http.setRequestProperty("If-Range", download.getValidator());
+                }
+            }
+            if (http.getRequestProperty("Accept-Encoding") == null) {
+                http.setRequestProperty("Accept-Encoding", Encodings.ACCEPT_ENCODING);
+            }
+
+            http.setReadTimeout(readTimeout > 0 ? readTimeout : defaultReadTimeout);
+            http.setConnectTimeout(connectTimeout > 0 ? connectTimeout : defaultConnectTimeout);
+            http.setUseCaches(cache == null);
+            http.setDoInput(true);
+
+            // Revalidate the stored response
+            if (cached != null) {
+                if (cached.etag != null) {
+                    http.setRequestProperty("If-None-Match", cached.etag);
+                }
+                if (cached.lastModified != null) {
+                    http.setRequestProperty("If-Modified-Since", cached.lastModified);
+                }
+            }
+            http.setRequestMethod( method );
+            boolean compress = body != null && prepareBody(http);
+
+            long connecting = System.nanoTime();
+            http.connect();
+            metrics.connect = System.nanoTime() - connecting;
+
+            // Send value when needed
+            if ( body != null ) {
+                sendBody(http, compress);
+            }
+            return http;
+        } catch (IOException e) {
+            http.disconnect();
+            throw e;
+        }
+    }
+
+    /**
+     * Private: set the streaming mode of the body, before
+     * connecting. A body of known length is sent in fixed-length
+     * mode, otherwise (or when compressed) in chunked mode, so it
+     * is never buffered as a whole
+     *
+     * @param http (HttpURLConnection) Connection of the request
+     * @return true if the body is compressed
+     */
+    private boolean prepareBody(HttpURLConnection http) {
+        long length = body.contentLength();
+        boolean compress = gzip && (length < 0 || length >= GZIP_MIN_SIZE);
+
+        http.setDoOutput(true);
+        if (compress) {
+            http.setRequestProperty("Content-Encoding", Encodings.GZIP);
+            http.setChunkedStreamingMode(0);
+        } else if (length >= 0 && length <= Integer.MAX_VALUE) {
+            http.setFixedLengthStreamingMode((int) length);
+        } else {
+            http.setChunkedStreamingMode(0);
+        }
+        return compress;
+    }
+
+    /**
+     * Private: stream the body to the connection
+     *
+     * @param http (HttpURLConnection) Connected connection
+     * @param compress (boolean) true to compress the body with gzip
+     * @throws IOException if the body cannot be sent
+     */
+    private void sendBody(HttpURLConnection http, boolean compress) throws IOException {
+        long length = body.contentLength();
+        CountingOutputStream wire = new CountingOutputStream(http.getOutputStream());
+        CountingOutputStream raw = null;
+        try {
+            OutputStream out = compress ? new GZIPOutputStream(wire, BufferPool.BUFFER_SIZE) : wire;
+            raw = new CountingOutputStream(out, length, progress);
+            body.writeTo(raw);
+            raw.complete();
+            if (compress) {
+                ((GZIPOutputStream) out).finish();
+            }
+            wire.flush();
+        } finally {
+            wire.close();
+            Traffic.getInstance().sent(raw != null ? raw.getCount() : 0, wire.getCount());
+            metrics.requestBytes += wire.getCount();
+        }
+    }
+
+    /**
+     * Private: check if the request can go through a transport:
+     * a URL it supports, no file, no progress, and a body
+     * small enough to be kept in memory
+     *
+     * @param async (Transport) Transport of the request
+     * @param url (URL) URL of the request
+     * @return true to send the request with the transport
+     */
+    private boolean canSendWith(Transport async, URL url) {
+        long length = body != null ? body.contentLength() : 0;
+        return download == null && progress == null
+                && length >= 0 && length <= TransportRequest.MAX_BODY / 2
+                && async.supports(url);
+    }
+
+    /**
+     * Private: send the request with a transport. The worker
+     * is free as soon as the request is handed over, the
+     * response is handled later in another worker
+     *
+     * @param async (Transport) Transport of the request
+     * @param url (URL) URL of the request
+     * @param cache (DiskCache) Installed cache (can be 'null')
+     * @param cached (CacheEntry) Stored response to revalidate (can be 'null')
+     * @see Transport
+     */
+    private void sendWith(Transport async, URL url, DiskCache cache, CacheEntry cached) {
+        TransportRequest request;
+        try {
+            boolean compress = body != null && gzip && body.contentLength() >= GZIP_MIN_SIZE;
+            byte[] payload = body != null ? bufferBody(compress)
+                    : ("POST".equals(method) || "PUT".equals(method) || "PATCH".equals(method)
+                    ? new byte[0] : null);
+            request = new TransportRequest(method, url, transportHeaders(cached, compress), payload,
+                    connectTimeout > 0 ? connectTimeout : defaultConnectTimeout,
+                    readTimeout > 0 ? readTimeout : defaultReadTimeout);
+        } catch (IOException | IllegalArgumentException e) {
+            if ( logs ) Logs.e(CO_LINE, "Error when preparing the request: " + e.toString());
+
+            setErrorResult(e.getClass().getSimpleName(), e.toString(),
+                    "Error in http url connection", 0);
+            return;
+        }
+
+        new TransportCall(async, url, cache, cached, request).send(0);
+    }
+
+    /**
+     * Private: get the header properties of a request sent by
+     * a transport, with the same defaults as HttpURLConnection
+     *
+     * @param cached (CacheEntry) Stored response to revalidate (can be 'null')
+     * @param compress (boolean) true if the body is compressed
+     * @return Header properties, in order
+     */
+    private Map<String, String> transportHeaders(CacheEntry cached, boolean compress) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        if (headers != null) {
+            for (Map.Entry<String, Object> entry : headers.entrySet()) {
+                fields.put(entry.getKey(), String.valueOf(entry.getValue()));
+            }
+        }
+        if (!hasHeader(fields, "Content-Type")) {
+            fields.put("Content-Type", body != null ? body.contentType() : FormBody.CONTENT_TYPE);
+        }
+        if (!hasHeader(fields, "Accept-Encoding")) {
+            fields.put("Accept-Encoding", Encodings.ACCEPT_ENCODING);
+        }
+        if (compress) {
+            fields.put("Content-Encoding", Encodings.GZIP);
+        }
+
+        // Revalidate the stored response
+        if (cached != null) {
+            if (cached.etag != null) {
+                fields.put("If-None-Match", cached.etag);
+            }
+            if (cached.lastModified != null) {
+                fields.put("If-Modified-Since", cached.lastModified);
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Private: check if a header property is set, whatever
+     * the case of its name
+     *
+     * @param fields (Map) Header properties
+     * @param name (String) Name of the property
+     * @return true if the property is set
+     */
+    private static boolean hasHeader(Map<String, String> fields, String name) {
+        for (String key : fields.keySet()) {
+            if (key.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Private: write the body in memory, compressed if needed,
+     * so a transport can send it at once
+     *
+     * @param compress (boolean) true to compress the body with gzip
+     * @return Bytes to send
+     * @throws IOException if the body cannot be read
+     */
+    private byte[] bufferBody(boolean compress) throws IOException {
+        long length = body.contentLength();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(
+                (int) (compress ? length / 2 : length) + 64);
+        OutputStream out = compress ? new GZIPOutputStream(buffer, BufferPool.BUFFER_SIZE) : buffer;
+        body.writeTo(out);
+        out.close();
+
+        byte[] bytes = buffer.toByteArray();
+        Traffic.getInstance().sent(length, bytes.length);
+        metrics.requestBytes += bytes.length;
+        return bytes;
+    }
+
+    /**
+     * Private: handle the response of a transport, in
+     * a worker, like the one of a blocking connection
+     *
+     * @param cache (DiskCache) Installed cache (can be 'null')
+     * @param cached (CacheEntry) Stored response to revalidate (can be 'null')
+     * @param response (TransportResponse) Complete response of the server
+     */
+    private void handleTransported(DiskCache cache, CacheEntry cached, TransportResponse response) {
+        int status = response.status;
+        metrics.connect = response.connect;
+        metrics.firstByte = response.firstByte;
+        if ( logs ) Logs.d(CO_LINE, "Status response: " + status);
+
+        // Not modified: the stored response is still valid
+        if (status == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+            if ( logs ) Logs.d(CO_LINE, "Response revalidated from the disk cache");
+
+            metrics.cacheStatus = CallMetrics.CacheStatus.REVALIDATED;
+            cached.refresh(response.getHeaders());
+            cache.update(cached);
+            handleCached(cache, cached);
+            return;
+        }
+
+        String contentType = response.header("Content-Type");
+        CacheEntry entry = cache != null && status == HttpURLConnection.HTTP_OK
+                ? CacheEntry.fromResponse(route, contentType, response.getHeaders()) : null;
+        if (memoryKey != null) {
+            memoryStorable = CacheEntry.isStorable(response.getHeaders(), true);
+        }
+        handleStream(new ByteArrayInputStream(response.body, 0, response.length),
+                response.header("Content-Encoding"), contentType, response.length,
+                cache, entry, status);
+    }
+
+    /**
+     * Private: run the end of a transported request in a worker,
+     * so the threads of the transport only move bytes. It runs in
+     * the current thread when the dispatcher is full
+     *
+     * @param task (Runnable) Handling of the response or the error
+     */
+    private void complete(final Runnable task) {
+        Runnable guarded = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    crashed(e);
+                }
+            }
+        };
+        if (Dispatcher.getInstance().submit(guarded, Priority.CRITICAL) == null) {
+            guarded.run();
+        }
+    }
+
+    /**
+     * Protected: log an unexpected exception of the request, and
+     * give it as an Error if no result was given yet
+     *
+     * @param e (RuntimeException) Exception thrown by the request
+     */
+    protected void crashed(RuntimeException e) {
+        if ( logs ) Logs.e(CO_LINE, "Unexpected error in the request: " + e.toString());
+        if (!published) {
+            setErrorResult(e.getClass().getSimpleName(), e.toString(),
+                    "An unexpected error occurred in the request", 0);
+        }
+    }
+
+    /**
+     * Private: check if a failed attempt can be retried, and
+     * wait for the backoff delay
+     *
+     * @param attempt (int) Number of the failed attempt, from 0
+     * @return true if the request must be sent again
+     */
+    private boolean retry(int attempt) {
+        long delay = retryDelay(attempt);
+        if (delay < 0) {
+            return false;
+        }
+
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            // The request is cancelled
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Private: check if a failed attempt can be retried. Only
+     * idempotent methods are retried, within the policy and
+     * the global retry budget
+     *
+     * @param attempt (int) Number of the failed attempt, from 0
+     * @return Backoff delay in ms, -1 if the request must not be sent again
+     */
+    private long retryDelay(int attempt) {
+        RetryPolicy policy = retryPolicy != null ? retryPolicy : RetryPolicy.getDefault();
+        if (!isIdempotent() || (body != null && !body.isRepeatable())
+                || attempt >= policy.getMaxRetries()
+                || !RetryBudget.getInstance().tryWithdraw()) {
+            return -1;
+        }
+
+        long delay = policy.delay(attempt);
+        if ( logs ) Logs.d(CO_LINE, "Retry " + (attempt + 1) + " in " + delay + "ms");
+        return delay;
+    }
+
+    /**
+     * Private: check if the method can be sent twice
+     * without a different effect
+     *
+     * @return true for GET, HEAD, PUT, DELETE and OPTIONS
+     */
+    private boolean isIdempotent() {
+        return "GET".equals(method) || "HEAD".equals(method) || "PUT".equals(method)
+                || "DELETE".equals(method) || "OPTIONS".equals(method);
+    }
+
+    /**
+     * Private: check if a status is a transient server error
+     *
+     * @param status (int) HTTP response status
+     * @return true for 502, 503 and 504
+     */
+    private static boolean isRetryableStatus(int status) {
+        return status == HttpURLConnection.HTTP_BAD_GATEWAY
+                || status == HttpURLConnection.HTTP_UNAVAILABLE
+                || status == HttpURLConnection.HTTP_GATEWAY_TIMEOUT;
+    }
+
+    /**
+     * Private: check if the client asked to revalidate
+     * with a "Cache-Control: no-cache" header
+     *
+     * @return true if a fresh cached response can't be used
+     */
+    private boolean noCacheRequested() {
+        if (headers == null) {
+            return false;
+        }
+        for (Map.Entry<String, Object> entry : headers.entrySet()) {
+            if ("Cache-Control".equalsIgnoreCase(entry.getKey())
+                    && String.valueOf(entry.getValue()).toLowerCase().contains("no-cache")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Private: handle a response stored in the disk cache
+     *
+     * @param cache (DiskCache) Installed cache
+     * @param cached (CacheEntry) Stored response
+     */
+    private void handleCached(DiskCache cache, CacheEntry cached) {
+        InputStream in;
+        try {
+            in = cached.openBody();
+        } catch (IOException e) {
+            cache.remove(cached.url);
+            setErrorResult("IOException", e.toString(),
+                    "An error occurred when reading cached response", cached.status);
+            return;
+        }
+        handleBody(in, cached.status, cached.contentType, cached.length);
+    }
+
+    /**
+     * Private: read the body of a response, parse it for an
+     * ObjCollback, then notify the result. The stream is closed
+     *
+     * @param inputStream (InputStream) Body of the response
+     * @param status (int) HTTP response status
+     * @param contentType (String) Content-Type of the body (can be 'null')
+     * @param length (long) Length of the body, -1 if unknown
+     */
+    private void handleBody(InputStream inputStream, int status,
+                            String contentType, long length) {
+        boolean success = status >= 200 && status <= 299;
+
+        // Parse custom objects from the stream, without a String copy
+        if (type != null && success && memoryKey == null) {
+            try {
+                parseObject(new InputStreamReader(inputStream,
+                        BodyReader.charset(contentType)), status);
+            } finally {
+                release(inputStream);
+            }
+            return;
+        }
+
+        // Parse responses
+        String response;
+        long reading = System.nanoTime();
+        try {
+            response = BodyReader.read(inputStream, length, contentType);
+            metrics.bodyRead = System.nanoTime() - reading;
+        } catch (Exception e) {
+            if ( logs ) Logs.e(CO_LINE, "Error when parsing result: " + e.toString());
+
+            setErrorResult("Exception", e.toString(),
+                    "An error occurred when reading server response", status);
+            return;
+        } finally {
+            release(inputStream);
+        }
+
+        // Handle server response
+        if ( logs ) Logs.d(CO_LINE, response);
+
+        if (success) {
+            MemoryCache memory = MemoryCache.getInstalled();
+            if (memoryKey != null && memoryStorable && memory != null
+                    && status == HttpURLConnection.HTTP_OK) {
+                memory.put(memoryKey, new Response(status, response), memoryTtl);
+            }
+
+            if (type != null) {
+                parseObject(new StringReader(response), status);
+            } else {
+                setResponseResult(response, status);
+            }
+            return;
+        }
+
+        setErrorResult(null, null, response, status);
+    }
+
+    /**
+     * Private: parse the custom object of an ObjCollback
+     * and notify the result
+     *
+     * @param in (Reader) JSON body
+     * @param status (int) HTTP response status
+     */
+    private void parseObject(Reader in, int status) {
+        long parsing = System.nanoTime();
+        try {
+            Object result = Converter.getInstance().read(new JsonReader(in), type);
+            metrics.deserialization = System.nanoTime() - parsing;
+            setObjectResult(result, status);
+        } catch (JsonParseException e) {
+            if ( logs ) Logs.e(CO_LINE, "Error when parsing object: " + e.toString());
+
+            setErrorResult("JsonParseException", e.toString(),
+                    "An error occurred when parsing server response", status);
+        } catch (IOException e) {
+            if ( logs ) Logs.e(CO_LINE, "Error when reading object: " + e.toString());
+
+            setErrorResult("IOException", e.toString(),
+                    "An error occurred when reading server response", status);
+        }
+    }
+
+    /**
+     * Private: get the Content-Length of the response
+     *
+     * @param http (HttpURLConnection) Current connection
+     * @return Length of the body, -1 if unknown
+     */
+    private static long contentLength(HttpURLConnection http) {
+        String value = http.getHeaderField("Content-Length");
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Private: drain and close a body so the connection can be
+     * reused, or disconnect if too much of the body is left
+     *
+     * @param in (InputStream) Body of the response
+     */
+    private void release(InputStream in) {
+        if (!Connections.release(in) && connection != null) {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Private: count the bytes of a response body
+     *
+     * @param wire (long) Bytes received from the network
+     * @param decoded (long) Bytes after decompression
+     */
+    private void received(long wire, long decoded) {
+        Traffic.getInstance().received(wire, decoded);
+        metrics.responseBytes += wire;
+        metrics.decodedBytes += decoded;
+    }
+
+    /**
+     * Private: notify the result to the observers,
+     * then report the metrics of the call
+     *
+     * @param status (int) HTTP response status
+     */
+    private void publish(int status) {
+        published = true;
+        metrics.status = status;
+        metrics.success = err == null;
+        metrics.total = System.nanoTime() - started;
+        setChanged();
+        notifyObservers();
+        Metrics.getInstance().report(metrics);
+    }
+
+    /**
+     * Private: create an error object to be handled by
+     * Collback.onResult()
+     */
+    private void setErrorResult(String exception, String stacktrace, String message, int status) {
+        if (message == null || message.length() == 0) {
+            message = "An error occurred when trying to contact the server";
+        }
+        this.err = new Error(status, exception, stacktrace, message);
+        this.res = null;
+        publish(status);
+    }
+
+    /**
+     * Private: create a response object to be handled by
+     * Collback.onResult()
+     */
+    private void setResponseResult(String response, int status) {
+        this.err = null;
+        this.res = new Response(status, response);
+        publish(status);
+    }
+
+    /**
+     * Private: create a response with the downloaded file
+     * to be handled by Collback.onResult()
+     */
+    private void setFileResult(File file, int status) {
+        this.err = null;
+        this.res = new Response(status, (String) null);
+        this.res.file = file;
+        publish(status);
+    }
+
+    /**
+     * Private: create a response with the custom object
+     * to be handled by ObjCollback.onResult()
+     */
+    private void setObjectResult(Object result, int status) {
+        this.err = null;
+        this.res = new Response(status, null);
+        this.obj = result;
+        publish(status);
+    }
+
+    /**
+     * Private: attempts of a request sent by a transport, retried
+     * after their backoff delay without holding any thread
+     */
+    private final class TransportCall implements TransportCallback {
+
+        private final Transport async;
+        private final DiskCache cache;
+        private final CacheEntry cached;
+        private final TransportRequest request;
+        private final CircuitBreaker breaker;
+        private int attempt;
+
+        TransportCall(Transport async, URL url, DiskCache cache,
+                      CacheEntry cached, TransportRequest request) {
+            this.async = async;
+            this.cache = cache;
+            this.cached = cached;
+            this.request = request;
+            this.breaker = CircuitBreaker.forHost(url.getHost().toLowerCase());
+        }
+
+        /**
+         * Send the current attempt
+         *
+         * @param delay (long) Delay in ms before sending
+         */
+        void send(long delay) {
+            // Fail fast while the server is unhealthy
+            if (!breaker.allowRequest()) {
+                complete(new Runnable() {
+                    @Override
+                    public void run() {
+                        if ( logs ) Logs.e(CO_LINE, "Circuit breaker open for " + route);
+
+                        setErrorResult(CircuitBreaker.EXCEPTION, null,
+                                "The server is unavailable, the request was not sent", 0);
+                    }
+                });
+                return;
+            }
+
+            if ( logs ) Logs.d(CO_LINE, "Do connection with " + async.getClass().getSimpleName() + "...");
+
+            metrics.attempts = attempt + 1;
+            try {
+                async.send(request, this, delay);
+            } catch (RuntimeException e) {
+                // Also thrown in a thread of the transport, for a retry
+                breaker.releaseProbe();
+                crashed(e);
+            }
+        }
+
+        @Override
+        public void onResponse(final TransportResponse response) {
+            if (response.status >= 500) {
+                breaker.onFailure();
+            } else {
+                breaker.onSuccess();
+            }
+            if (isRetryableStatus(response.status) && retryLater()) {
+                return;
+            }
+
+            complete(new Runnable() {
+                @Override
+                public void run() {
+                    handleTransported(cache, cached, response);
+                }
+            });
+        }
+
+        @Override
+        public void onFailure(final IOException e) {
+            if ( logs ) Logs.e(CO_LINE, "Error in transport connection: " + e.toString());
+
+            breaker.onFailure();
+            if (retryLater()) {
+                return;
+            }
+
+            complete(new Runnable() {
+                @Override
+                public void run() {
+                    setErrorResult("IOException", e.toString(),
+                            "Error in http url connection", 0);
+                }
+            });
+        }
+
+        /**
+         * Private: send the request again after its backoff delay
+         *
+         * @return true if the request is sent again
+         */
+        private boolean retryLater() {
+            long delay = retryDelay(attempt);
+            if (delay < 0) {
+                return false;
+            }
+            attempt += 1;
+            send(delay);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.bodies;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public abstract class Body {
+
+    /**
+     * Get the Content-Type of the body
+     *
+     * @return Value of the Content-Type header
+     */
+    public abstract String contentType();
+
+    /**
+     * Get the length of the body. When known, the body is sent in
+     * fixed-length streaming mode, otherwise in chunked mode
+     *
+     * @return Length in bytes, -1 if unknown
+     */
+    public abstract long contentLength();
+
+    /**
+     * Write the body to the connection, without keeping
+     * it in memory
+     *
+     * @param out (OutputStream) Stream of the connection
+     * @throws IOException if the body cannot be written
+     */
+    public abstract void writeTo(OutputStream out) throws IOException;
+
+    /**
+     * Check if the body can be written again for a retry
+     *
+     * @return true if writeTo() can be called more than once
+     */
+    public boolean isRepeatable() {
+        return true;
+    }
+}
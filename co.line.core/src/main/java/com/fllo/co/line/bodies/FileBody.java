@@ -0,0 +1,80 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.bodies;
+
+import com.fllo.co.line.io.BufferPool;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+public class FileBody extends Body {
+
+    private final File file;
+    private final String contentType;
+
+    /**
+     * Body streamed from a file
+     *
+     * @param file (File) File to send
+     * @param contentType (String) Content-Type of the body
+     */
+    public FileBody(File file, String contentType) {
+        this.file = file;
+        this.contentType = contentType;
+    }
+
+    @Override
+    public String contentType() {
+        return contentType;
+    }
+
+    @Override
+    public long contentLength() {
+        return file.length();
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            copy(in, out);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Copy a stream with a pooled buffer
+     *
+     * @param in (InputStream) Source stream
+     * @param out (OutputStream) Destination stream
+     * @throws IOException if the copy fails
+     */
+    static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = BufferPool.acquire();
+        try {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            BufferPool.release(buffer);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.bodies;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+public class FormBody extends Body {
+
+    public static final String CONTENT_TYPE = "application/x-www-form-urlencoded;charset=UTF-8";
+
+    private static final byte[] HEX = {
+            '0', '1', '2', '3', '4', '5', '6', '7',
+            '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'
+    };
+    private static final boolean[] UNRESERVED = new boolean[0x80];
+
+    static {
+        for (char c = 'a'; c <= 'z'; ++c) {
+            UNRESERVED[c] = true;
+            UNRESERVED[c - 'a' + 'A'] = true;
+        }
+        for (char c = '0'; c <= '9'; ++c) {
+            UNRESERVED[c] = true;
+        }
+        UNRESERVED['.'] = true;
+        UNRESERVED['-'] = true;
+        UNRESERVED['*'] = true;
+        UNRESERVED['_'] = true;
+    }
+
+    private final byte[] encoded;
+
+    /**
+     * Body of URL-encoded keys/values pairs. The form is encoded
+     * once, into an array of its exact encoded length
+     *
+     * @param values (Iterable) Keys/values pairs of the form
+     */
+    public FormBody(Iterable<Map.Entry<String, Object>> values) {
+        int length = -1;
+        for (Map.Entry<String, Object> entry : values) {
+            length += 2 + encodedLength(entry.getKey())
+                    + encodedLength(String.valueOf(entry.getValue()));
+        }
+
+        this.encoded = new byte[Math.max(length, 0)];
+        int pos = 0;
+        for (Map.Entry<String, Object> entry : values) {
+            if (pos > 0) {
+                encoded[pos++] = '&';
+            }
+            pos = encode(entry.getKey(), encoded, pos);
+            encoded[pos++] = '=';
+            pos = encode(String.valueOf(entry.getValue()), encoded, pos);
+        }
+    }
+
+    @Override
+    public String contentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public long contentLength() {
+        return encoded.length;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(encoded);
+    }
+
+    @Override
+    public String toString() {
+        return new String(encoded);
+    }
+
+    /**
+     * Private: length of a key or a value once URL-encoded in UTF-8
+     */
+    private static int encodedLength(String value) {
+        int length = 0;
+        for (int i = 0, size = value.length(); i < size; ++i) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length += UNRESERVED[c] || c == ' ' ? 1 : 3;
+            } else if (c < 0x800) {
+                length += 6;
+            } else if (Character.isHighSurrogate(c) && i + 1 < size
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 12;
+                ++i;
+            } else if (Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+                length += 3;
+            } else {
+                length += 9;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Private: URL-encode a key or a value in UTF-8, as URLEncoder
+     * does, straight into {byte[] out} from {int pos}
+     *
+     * @return The position after the encoded bytes
+     */
+    private static int encode(String value, byte[] out, int pos) {
+        for (int i = 0, size = value.length(); i < size; ++i) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (UNRESERVED[c]) {
+                    out[pos++] = (byte) c;
+                } else if (c == ' ') {
+                    out[pos++] = '+';
+                } else {
+                    pos = percent(c, out, pos);
+                }
+            } else if (c < 0x800) {
+                pos = percent(0xc0 | (c >> 6), out, pos);
+                pos = percent(0x80 | (c & 0x3f), out, pos);
+            } else if (Character.isHighSurrogate(c) && i + 1 < size
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int code = Character.toCodePoint(c, value.charAt(++i));
+                pos = percent(0xf0 | (code >> 18), out, pos);
+                pos = percent(0x80 | ((code >> 12) & 0x3f), out, pos);
+                pos = percent(0x80 | ((code >> 6) & 0x3f), out, pos);
+                pos = percent(0x80 | (code & 0x3f), out, pos);
+            } else if (Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+                // Unpaired surrogates are replaced, as by the UTF-8 encoder
+                pos = percent('?', out, pos);
+            } else {
+                pos = percent(0xe0 | (c >> 12), out, pos);
+                pos = percent(0x80 | ((c >> 6) & 0x3f), out, pos);
+                pos = percent(0x80 | (c & 0x3f), out, pos);
+            }
+        }
+        return pos;
+    }
+
+    /**
+     * Private: write one byte as "%XX"
+     */
+    private static int percent(int b, byte[] out, int pos) {
+        out[pos] = '%';
+        out[pos + 1] = HEX[(b >> 4) & 0x0f];
+        out[pos + 2] = HEX[b & 0x0f];
+        return pos + 3;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.bodies;
+
+import com.fllo.co.line.builders.Converter;
+import com.fllo.co.line.io.BodyReader;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonNull;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+public class JsonBody extends Body {
+
+    public static final String CONTENT_TYPE = "application/json; charset=UTF-8";
+
+    private final Object value;
+
+    /**
+     * Body of an object serialized in JSON with the shared
+     * Gson of the Converter. It is written straight to the
+     * connection, never as a String, so its length is unknown
+     * and it is sent in chunked mode
+     *
+     * @param value (Object) Object or JsonElement to send (can be 'null')
+     * @see Converter#getGson()
+     */
+    public JsonBody(Object value) {
+        this.value = value != null ? value : JsonNull.INSTANCE;
+    }
+
+    @Override
+    public String contentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public long contentLength() {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        Gson gson = Converter.getInstance().getGson();
+        Writer writer = new OutputStreamWriter(out, BodyReader.UTF_8);
+        JsonWriter json = gson.newJsonWriter(writer);
+        try {
+            if (value instanceof JsonElement) {
+                gson.toJson((JsonElement) value, json);
+            } else {
+                gson.toJson(value, value.getClass(), json);
+            }
+        } catch (JsonIOException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e);
+        }
+        // Flushed but not closed, the connection closes its stream
+        json.flush();
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.bodies;
+
+import com.fllo.co.line.io.BodyReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+public class MultipartBody extends Body {
+
+    private static final byte[] CRLF = { '\r', '\n' };
+    private static final byte[] DASHES = { '-', '-' };
+
+    private final String boundary;
+    private final List<Part> parts = new ArrayList<>();
+
+    /**
+     * Body of type multipart/form-data, each part is
+     * streamed in turn when the body is sent
+     */
+    public MultipartBody() {
+        this.boundary = "Co.line-" + UUID.randomUUID().toString();
+    }
+
+    /**
+     * Add a text field
+     *
+     * @param name (String) Name of the field
+     * @param value (String) Value of the field
+     * @return MultipartBody instance
+     */
+    public MultipartBody add(String name, String value) {
+        return add(name, null, new BytesBody(value.getBytes(BodyReader.UTF_8),
+                "text/plain; charset=UTF-8"));
+    }
+
+    /**
+     * Add a file, streamed from the disk
+     *
+     * @param name (String) Name of the field
+     * @param file (File) File to send
+     * @param contentType (String) Content-Type of the file
+     * @return MultipartBody instance
+     */
+    public MultipartBody add(String name, File file, String contentType) {
+        return add(name, file.getName(), new FileBody(file, contentType));
+    }
+
+    /**
+     * Add a part with any body
+     *
+     * @param name (String) Name of the field
+     * @param filename (String) Name of the file (can be 'null')
+     * @param body (Body) Content of the part
+     * @return MultipartBody instance
+     */
+    public MultipartBody add(String name, String filename, Body body) {
+        StringBuilder header = new StringBuilder()
+                .append("Content-Disposition: form-data; name=\"")
+                .append(escape(name)).append('"');
+        if (filename != null) {
+            header.append("; filename=\"").append(escape(filename)).append('"');
+        }
+        if (body.contentType() != null) {
+            header.append("\r\nContent-Type: ").append(body.contentType());
+        }
+        header.append("\r\n\r\n");
+        parts.add(new Part(header.toString().getBytes(BodyReader.UTF_8), body));
+        return this;
+    }
+
+    @Override
+    public String contentType() {
+        return "multipart/form-data; boundary=" + boundary;
+    }
+
+    @Override
+    public long contentLength() {
+        byte[] boundaryBytes = boundary.getBytes(BodyReader.UTF_8);
+        long length = 0;
+        for (Part part : parts) {
+            long partLength = part.body.contentLength();
+            if (partLength < 0) {
+                return -1;
+            }
+            length += DASHES.length + boundaryBytes.length + CRLF.length
+                    + part.header.length + partLength + CRLF.length;
+        }
+        return length + DASHES.length + boundaryBytes.length + DASHES.length + CRLF.length;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        byte[] boundaryBytes = boundary.getBytes(BodyReader.UTF_8);
+        for (Part part : parts) {
+            out.write(DASHES);
+            out.write(boundaryBytes);
+            out.write(CRLF);
+            out.write(part.header);
+            part.body.writeTo(out);
+            out.write(CRLF);
+        }
+        out.write(DASHES);
+        out.write(boundaryBytes);
+        out.write(DASHES);
+        out.write(CRLF);
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        for (Part part : parts) {
+            if (!part.body.isRepeatable()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Private: escape the quotes and line breaks of a field name
+     */
+    private static String escape(String value) {
+        return value.replace("\"", "%22").replace("\r", "%0D").replace("\n", "%0A");
+    }
+
+    /**
+     * Private: headers and content of a part
+     */
+    private static final class Part {
+
+        private final byte[] header;
+        private final Body body;
+
+        Part(byte[] header, Body body) {
+            this.header = header;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.bodies;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+public class StreamBody extends Body {
+
+    private final InputStream in;
+    private final long length;
+    private final String contentType;
+
+    /**
+     * Body streamed from an InputStream, closed once sent.
+     * It can be sent only once, so it is never retried
+     *
+     * @param in (InputStream) Content of the body
+     * @param length (long) Length of the content, -1 if unknown
+     * @param contentType (String) Content-Type of the body
+     */
+    public StreamBody(InputStream in, long length, String contentType) {
+        this.in = in;
+        this.length = length;
+        this.contentType = contentType;
+    }
+
+    @Override
+    public String contentType() {
+        return contentType;
+    }
+
+    @Override
+    public long contentLength() {
+        return length;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        try {
+            FileBody.copy(in, out);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return false;
+    }
+}
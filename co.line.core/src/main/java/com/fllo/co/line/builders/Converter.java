@@ -0,0 +1,170 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.builders;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class Converter {
+
+    private static Converter instance = null;
+    private GsonBuilder builder = new GsonBuilder();
+    private volatile Gson gson;
+    private final ConcurrentHashMap<Class<?>, Type> types = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Type, TypeAdapter<?>> adapters = new ConcurrentHashMap<>();
+
+    /**
+     * Protected: converter's empty constructor.
+     *
+     */
+    protected Converter() { }
+
+    /**
+     * Get the current instance. If null, create a new one
+     *
+     * @return An instance of converter class
+     */
+    public static synchronized Converter getInstance() {
+        if (instance == null) {
+            instance = new Converter();
+        }
+        return instance;
+    }
+
+    /**
+     * Register a custom Gson type adapter, serializer or deserializer.
+     * Should be called once, at the app initialization
+     *
+     * @param type (Type) Type handled by the adapter
+     * @param adapter (Object) TypeAdapter, JsonSerializer,
+     *                JsonDeserializer or InstanceCreator
+     * @see GsonBuilder#registerTypeAdapter(Type, Object)
+     */
+    public synchronized void registerTypeAdapter(Type type, Object adapter) {
+        if (builder == null) {
+            builder = new GsonBuilder();
+        }
+        builder.registerTypeAdapter(type, adapter);
+        gson = null;
+        adapters.clear();
+    }
+
+    /**
+     * Replace the shared Gson by a custom one. Adapters
+     * registered later start again from a default Gson
+     *
+     * @param gson (Gson) Instance used for every custom object
+     */
+    public synchronized void setGson(Gson gson) {
+        this.builder = null;
+        this.gson = gson;
+        adapters.clear();
+    }
+
+    /**
+     * Get the shared Gson instance
+     *
+     * @return The Gson used for every custom object
+     */
+    public Gson getGson() {
+        Gson g = gson;
+        if (g == null) {
+            synchronized (this) {
+                if (gson == null) {
+                    gson = builder.create();
+                }
+                g = gson;
+            }
+        }
+        return g;
+    }
+
+    /**
+     * Get the type parameter of an ObjCollback class. The
+     * result is cached, so reflection happens once per class
+     *
+     * @param cls (Class) Class of the callback
+     * @return The custom object type, Object if not declared
+     */
+    public Type typeOf(Class<?> cls) {
+        Type type = types.get(cls);
+        if (type == null) {
+            type = Object.class;
+            for (Type genericInterface : cls.getGenericInterfaces()) {
+                if (genericInterface instanceof ParameterizedType) {
+                    type = ((ParameterizedType) genericInterface)
+                            .getActualTypeArguments()[0];
+                    break;
+                }
+            }
+            types.put(cls, type);
+        }
+        return type;
+    }
+
+    /**
+     * Get the cached type adapter of a custom object type
+     *
+     * @param type (Type) Type of the custom object
+     * @return The Gson adapter for this type
+     */
+    public TypeAdapter<?> adapterOf(Type type) {
+        TypeAdapter<?> adapter = adapters.get(type);
+        if (adapter == null) {
+            adapter = getGson().getAdapter(TypeToken.get(type));
+            adapters.put(type, adapter);
+        }
+        return adapter;
+    }
+
+    /**
+     * Read a custom object from a JSON stream, with the same
+     * leniency as Gson.fromJson()
+     *
+     * @param reader (JsonReader) JSON stream
+     * @param type (Type) Type of the custom object
+     * @return The custom object, null for an empty body
+     * @throws IOException if the stream cannot be read
+     * @throws JsonSyntaxException if the JSON is malformed
+     */
+    public Object read(JsonReader reader, Type type) throws IOException {
+        reader.setLenient(true);
+        try {
+            reader.peek();
+        } catch (EOFException e) {
+            return null;
+        } catch (MalformedJsonException e) {
+            throw new JsonSyntaxException(e);
+        }
+
+        try {
+            return adapterOf(type).read(reader);
+        } catch (MalformedJsonException | EOFException | IllegalStateException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+}
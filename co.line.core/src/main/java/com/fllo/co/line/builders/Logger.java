@@ -0,0 +1,35 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.builders;
+
+public interface Logger {
+
+    /**
+     * Write a debug message
+     *
+     * @param tag (String) Source of the message
+     * @param message (String) Message to write
+     */
+    void d(String tag, String message);
+
+    /**
+     * Write an error message
+     *
+     * @param tag (String) Source of the message
+     * @param message (String) Message to write
+     */
+    void e(String tag, String message);
+}
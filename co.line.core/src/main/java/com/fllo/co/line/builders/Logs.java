@@ -15,16 +15,21 @@
  */
 package com.fllo.co.line.builders;
 
-import android.util.Log;
-
-import com.fllo.co.line.BuildConfig;
-
 public class Logs {
 
-    private static final String CO_LINE  = "Co.line";
-
     private static Logs instance = null;
     private boolean status = false;
+    private volatile Logger logger = new Logger() {
+        @Override
+        public void d(String tag, String message) {
+            System.out.println(tag + ": " + message);
+        }
+
+        @Override
+        public void e(String tag, String message) {
+            System.err.println(tag + ": " + message);
+        }
+    };
 
     /**
      * Protected: logs'empty constructor.
@@ -40,7 +45,6 @@ public class Logs {
     public static Logs getInstance() {
         if (instance == null) {
             Logs.instance = new Logs();
-            Log.i(CO_LINE, "Initialization, version " + BuildConfig.VERSION_NAME);
         }
         return instance;
     }
@@ -62,4 +66,34 @@ public class Logs {
     public boolean getStatus() {
         return this.status;
     }
+
+    /**
+     * Set where the logs are written. By default, the
+     * standard output of the JVM
+     *
+     * @param logger (Logger) Destination of the logs
+     */
+    public void setLogger(Logger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * Write a debug message
+     *
+     * @param tag (String) Source of the message
+     * @param message (String) Message to write
+     */
+    public static void d(String tag, String message) {
+        getInstance().logger.d(tag, message);
+    }
+
+    /**
+     * Write an error message
+     *
+     * @param tag (String) Source of the message
+     * @param message (String) Message to write
+     */
+    public static void e(String tag, String message) {
+        getInstance().logger.e(tag, message);
+    }
 }
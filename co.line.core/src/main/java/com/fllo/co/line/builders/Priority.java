@@ -0,0 +1,34 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.builders;
+
+public enum Priority {
+
+    // Enums, from the highest to the lowest
+    CRITICAL,
+    NORMAL,
+    PREFETCH;
+
+    /**
+     * Check if this priority is served before another one
+     *
+     * @param other (Priority) Priority to compare
+     * @return true if this priority is higher
+     */
+    public boolean isHigherThan(Priority other) {
+        return ordinal() < other.ordinal();
+    }
+}
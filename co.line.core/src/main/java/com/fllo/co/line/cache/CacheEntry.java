@@ -0,0 +1,286 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.cache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+public class CacheEntry {
+
+    private static final TimeZone GMT = TimeZone.getTimeZone("GMT");
+    private static final String[] DATE_FORMATS = {
+            "EEE, dd MMM yyyy HH:mm:ss zzz",
+            "EEEE, dd-MMM-yy HH:mm:ss zzz",
+            "EEE MMM d HH:mm:ss yyyy"
+    };
+
+    public final String url;
+    public int status;
+    public String contentType;
+    public String etag;
+    public String lastModified;
+    public long expires;
+    public long length;
+    File bodyFile;
+
+    /**
+     * Response stored in the disk cache
+     *
+     * @param url (String) URL of the request
+     * @param status (int) HTTP response status
+     * @param contentType (String) Content-Type of the body (can be 'null')
+     * @param etag (String) ETag validator (can be 'null')
+     * @param lastModified (String) Last-Modified validator (can be 'null')
+     * @param expires (long) Time in ms until the entry is fresh, 0 to always revalidate
+     * @param length (long) Length of the body
+     */
+    public CacheEntry(String url, int status, String contentType, String etag,
+                      String lastModified, long expires, long length) {
+        this.url = url;
+        this.status = status;
+        this.contentType = contentType;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.expires = expires;
+        this.length = length;
+    }
+
+    /**
+     * Create an entry from a server response, following
+     * its Cache-Control, Expires and Vary headers
+     *
+     * @param url (String) URL of the request
+     * @param http (HttpURLConnection) Connection with a 200 response
+     * @return The entry to store, or null if the response can't be cached
+     */
+    public static CacheEntry fromResponse(String url, HttpURLConnection http) {
+        return fromResponse(url, http.getContentType(), http.getHeaderFields());
+    }
+
+    /**
+     * Create an entry from the header fields of a server
+     * response, following its Cache-Control, Expires and Vary headers
+     *
+     * @param url (String) URL of the request
+     * @param contentType (String) Content-Type of the body (can be 'null')
+     * @param headers (Map) Header fields of a 200 response
+     * @return The entry to store, or null if the response can't be cached
+     */
+    public static CacheEntry fromResponse(String url, String contentType,
+                                          Map<String, List<String>> headers) {
+        String vary = header(headers, "Vary");
+        if (vary != null && !vary.trim().equalsIgnoreCase("Accept-Encoding")) {
+            return null;
+        }
+
+        Long freshness = freshUntil(headers);
+        if (freshness == null) {
+            return null;
+        }
+
+        String etag = header(headers, "ETag");
+        String lastModified = header(headers, "Last-Modified");
+        if (freshness <= System.currentTimeMillis() && etag == null && lastModified == null) {
+            return null;
+        }
+        return new CacheEntry(url, 200, contentType, etag,
+                lastModified, freshness, 0);
+    }
+
+    /**
+     * Check if a response can be stored, following its Cache-Control
+     *
+     * @param headers (Map) Header fields of the response
+     * @param shared (boolean) true for a cache shared between users,
+     *               which must not store "private" responses
+     * @return false for "no-store", and for "private" in a shared cache
+     */
+    public static boolean isStorable(Map<String, List<String>> headers, boolean shared) {
+        String cacheControl = header(headers, "Cache-Control");
+        if (cacheControl == null) {
+            return true;
+        }
+        for (String directive : cacheControl.toLowerCase(Locale.US).split(",")) {
+            String d = directive.trim();
+            if (d.equals("no-store")
+                    || (shared && (d.equals("private") || d.startsWith("private=")))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Update the freshness and the validators from
+     * a 304 Not Modified response
+     *
+     * @param http (HttpURLConnection) Connection with a 304 response
+     */
+    public void refresh(HttpURLConnection http) {
+        refresh(http.getHeaderFields());
+    }
+
+    /**
+     * Update the freshness and the validators from the
+     * header fields of a 304 Not Modified response
+     *
+     * @param headers (Map) Header fields of a 304 response
+     */
+    public void refresh(Map<String, List<String>> headers) {
+        Long freshness = freshUntil(headers);
+        this.expires = freshness == null ? 0 : freshness;
+        String newEtag = header(headers, "ETag");
+        if (newEtag != null) {
+            this.etag = newEtag;
+        }
+        String newLastModified = header(headers, "Last-Modified");
+        if (newLastModified != null) {
+            this.lastModified = newLastModified;
+        }
+    }
+
+    /**
+     * Check if the entry can be used without contacting the server
+     *
+     * @return true if the entry isn't expired
+     */
+    public boolean isFresh() {
+        return System.currentTimeMillis() < expires;
+    }
+
+    /**
+     * Check if the entry can be revalidated with a conditional request
+     *
+     * @return true if the entry has an ETag or a Last-Modified
+     */
+    public boolean hasValidators() {
+        return etag != null || lastModified != null;
+    }
+
+    /**
+     * Open the stored body
+     *
+     * @return Stream of the body, to close by the caller
+     * @throws FileNotFoundException if the body was removed
+     */
+    public InputStream openBody() throws FileNotFoundException {
+        return new FileInputStream(bodyFile);
+    }
+
+    /**
+     * Private: get the expiration time of a response. Every
+     * directive is read first: "no-store" wins over the others,
+     * then "no-cache", then "max-age"
+     *
+     * @param headers (Map) Header fields of the response
+     * @return Expiration time in ms, 0 to revalidate each time,
+     * null if the response must not be stored
+     */
+    private static Long freshUntil(Map<String, List<String>> headers) {
+        long now = System.currentTimeMillis();
+        String cacheControl = header(headers, "Cache-Control");
+        boolean noCache = false;
+        Long maxAge = null;
+        if (cacheControl != null) {
+            for (String directive : cacheControl.toLowerCase(Locale.US).split(",")) {
+                String d = directive.trim();
+                if (d.equals("no-store")) {
+                    return null;
+                } else if (d.equals("no-cache")) {
+                    noCache = true;
+                } else if (d.startsWith("max-age=") && maxAge == null) {
+                    try {
+                        maxAge = now + Long.parseLong(d.substring(8).trim()) * 1000L;
+                    } catch (NumberFormatException e) {
+                        maxAge = 0L;
+                    }
+                }
+            }
+        }
+        if (noCache) {
+            return 0L;
+        }
+        if (maxAge != null) {
+            return maxAge;
+        }
+
+        long expires = date(header(headers, "Expires"), 0);
+        if (expires > 0) {
+            long date = date(header(headers, "Date"), now);
+            // Apply the server's delay on the local clock
+            return now + (expires - date);
+        }
+        return 0L;
+    }
+
+    /**
+     * Private: get the values of a header field, joined with
+     * commas, whatever the case of its name
+     *
+     * @param headers (Map) Header fields of the response
+     * @param name (String) Name of the field
+     * @return The values, or null if the field isn't sent
+     */
+    private static String header(Map<String, List<String>> headers, String name) {
+        StringBuilder joined = null;
+        for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+            if (entry.getKey() == null || !entry.getKey().equalsIgnoreCase(name)) {
+                continue;
+            }
+            for (String value : entry.getValue()) {
+                if (joined == null) {
+                    joined = new StringBuilder(value);
+                } else {
+                    joined.append(", ").append(value);
+                }
+            }
+        }
+        return joined == null ? null : joined.toString();
+    }
+
+    /**
+     * Private: parse an HTTP date, in one of the
+     * three formats of HTTP/1.1
+     *
+     * @param value (String) Value of a date field (can be 'null')
+     * @param defaultValue (long) Time returned if the date is invalid
+     * @return Time in ms
+     */
+    private static long date(String value, long defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        for (String pattern : DATE_FORMATS) {
+            SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+            format.setTimeZone(GMT);
+            try {
+                return format.parse(value.trim()).getTime();
+            } catch (ParseException ignored) {
+                // try the next format
+            }
+        }
+        return defaultValue;
+    }
+}
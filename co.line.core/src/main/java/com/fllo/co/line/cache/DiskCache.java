@@ -0,0 +1,372 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class DiskCache {
+
+    private static final int VERSION = 1;
+    private static final String META = ".0";
+    private static final String BODY = ".1";
+    private static final String TMP = ".tmp";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static volatile DiskCache installed = null;
+
+    private final File directory;
+    private final long maxSize;
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size = 0;
+    private boolean loaded = false;
+
+    /**
+     * Disk cache of GET responses, bounded by size
+     * with a least recently used eviction
+     *
+     * @param directory (File) Directory of the cache files
+     * @param maxSize (long) Maximum size of the stored bodies in bytes
+     */
+    public DiskCache(File directory, long maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0: " + maxSize);
+        }
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Install the cache used by every GET request
+     *
+     * @param cache (DiskCache) Cache to use, null to disable it
+     */
+    public static void install(DiskCache cache) {
+        installed = cache;
+    }
+
+    /**
+     * Get the installed cache
+     *
+     * @return The installed cache, null if disabled
+     */
+    public static DiskCache getInstalled() {
+        return installed;
+    }
+
+    /**
+     * Get the stored response of an URL
+     *
+     * @param url (String) URL of the request
+     * @return The entry, or null if not stored
+     */
+    public synchronized CacheEntry get(String url) {
+        load();
+        String key = key(url);
+        if (entries.get(key) == null) {
+            return null;
+        }
+
+        File meta = new File(directory, key + META);
+        File body = new File(directory, key + BODY);
+        CacheEntry entry = readMeta(meta);
+        if (entry == null || !body.exists() || !url.equals(entry.url)) {
+            removeKey(key);
+            return null;
+        }
+        entry.bodyFile = body;
+        meta.setLastModified(System.currentTimeMillis());
+        return entry;
+    }
+
+    /**
+     * Store a response, then evict the least recently
+     * used ones over the maximum size
+     *
+     * @param entry (CacheEntry) Entry created from the response
+     * @param body (byte[]) Body of the response
+     * @param length (int) Length of the body in the array
+     */
+    public void put(CacheEntry entry, byte[] body, int length) {
+        if (length > maxSize) {
+            return;
+        }
+        entry.length = length;
+
+        String key = key(entry.url);
+        synchronized (this) {
+            load();
+        }
+        // Unique temporary files: the same URL can be stored concurrently
+        File tmpMeta = null;
+        File tmpBody = null;
+        try {
+            tmpMeta = File.createTempFile(key, META + TMP, directory);
+            tmpBody = File.createTempFile(key, BODY + TMP, directory);
+            OutputStream out = new FileOutputStream(tmpBody);
+            try {
+                out.write(body, 0, length);
+            } finally {
+                out.close();
+            }
+            writeMeta(tmpMeta, entry);
+        } catch (IOException e) {
+            if (tmpMeta != null) {
+                tmpMeta.delete();
+            }
+            if (tmpBody != null) {
+                tmpBody.delete();
+            }
+            return;
+        }
+
+        synchronized (this) {
+            removeKey(key);
+            File meta = new File(directory, key + META);
+            File bodyFile = new File(directory, key + BODY);
+            if (!tmpBody.renameTo(bodyFile) || !tmpMeta.renameTo(meta)) {
+                tmpMeta.delete();
+                tmpBody.delete();
+                bodyFile.delete();
+                return;
+            }
+            entry.bodyFile = bodyFile;
+            entries.put(key, (long) length);
+            size += length;
+            evict();
+        }
+    }
+
+    /**
+     * Save the new freshness and validators of an entry,
+     * after a 304 Not Modified response
+     *
+     * @param entry (CacheEntry) Entry refreshed
+     */
+    public synchronized void update(CacheEntry entry) {
+        String key = key(entry.url);
+        if (entries.get(key) == null) {
+            return;
+        }
+        File tmpMeta = new File(directory, key + META + TMP);
+        try {
+            writeMeta(tmpMeta, entry);
+            File meta = new File(directory, key + META);
+            if (!tmpMeta.renameTo(meta)) {
+                meta.delete();
+                tmpMeta.renameTo(meta);
+            }
+        } catch (IOException e) {
+            tmpMeta.delete();
+        }
+    }
+
+    /**
+     * Remove the stored response of an URL
+     *
+     * @param url (String) URL of the request
+     */
+    public synchronized void remove(String url) {
+        load();
+        removeKey(key(url));
+    }
+
+    /**
+     * Remove every stored response
+     */
+    public synchronized void clear() {
+        load();
+        for (String key : entries.keySet()) {
+            new File(directory, key + META).delete();
+            new File(directory, key + BODY).delete();
+        }
+        entries.clear();
+        size = 0;
+    }
+
+    /**
+     * Get the size of the stored bodies
+     *
+     * @return Size in bytes
+     */
+    public synchronized long getSize() {
+        load();
+        return size;
+    }
+
+    /**
+     * Private: remove an entry by its key
+     *
+     * @param key (String) Key of the entry
+     */
+    private void removeKey(String key) {
+        Long length = entries.remove(key);
+        if (length != null) {
+            size -= length;
+        }
+        new File(directory, key + META).delete();
+        new File(directory, key + BODY).delete();
+    }
+
+    /**
+     * Private: evict the least recently used entries
+     * until the size fits in maxSize
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        while (size > maxSize && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            it.remove();
+            size -= eldest.getValue();
+            new File(directory, eldest.getKey() + META).delete();
+            new File(directory, eldest.getKey() + BODY).delete();
+        }
+    }
+
+    /**
+     * Private: build the index from the directory, the
+     * least recently used files first
+     */
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            return;
+        }
+
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long diff = a.lastModified() - b.lastModified();
+                return diff < 0 ? -1 : (diff == 0 ? 0 : 1);
+            }
+        });
+
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(TMP)) {
+                file.delete();
+            } else if (name.endsWith(META)) {
+                String key = name.substring(0, name.length() - META.length());
+                File body = new File(directory, key + BODY);
+                if (body.exists()) {
+                    entries.put(key, body.length());
+                    size += body.length();
+                } else {
+                    file.delete();
+                }
+            }
+        }
+        evict();
+    }
+
+    /**
+     * Private: read the metadata file of an entry
+     *
+     * @param file (File) Metadata file
+     * @return The entry, or null if unreadable
+     */
+    private static CacheEntry readMeta(File file) {
+        try {
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() != VERSION) {
+                    return null;
+                }
+                return new CacheEntry(in.readUTF(), in.readInt(), nullable(in.readUTF()),
+                        nullable(in.readUTF()), nullable(in.readUTF()),
+                        in.readLong(), in.readLong());
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Private: write the metadata file of an entry
+     *
+     * @param file (File) Metadata file
+     * @param entry (CacheEntry) Entry to write
+     * @throws IOException if the file cannot be written
+     */
+    private static void writeMeta(File file, CacheEntry entry) throws IOException {
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(VERSION);
+            out.writeUTF(entry.url);
+            out.writeInt(entry.status);
+            out.writeUTF(entry.contentType == null ? "" : entry.contentType);
+            out.writeUTF(entry.etag == null ? "" : entry.etag);
+            out.writeUTF(entry.lastModified == null ? "" : entry.lastModified);
+            out.writeLong(entry.expires);
+            out.writeLong(entry.length);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Private: convert an empty metadata value to null
+     */
+    private static String nullable(String value) {
+        return value.length() == 0 ? null : value;
+    }
+
+    /**
+     * Private: get the file key of an URL
+     *
+     * @param url (String) URL of the request
+     * @return MD5 of the URL in hexadecimal
+     */
+    private static String key(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(url.getBytes("UTF-8"));
+            char[] chars = new char[digest.length * 2];
+            for (int i = 0; i < digest.length; ++i) {
+                chars[i * 2] = HEX[(digest[i] >> 4) & 0xf];
+                chars[i * 2 + 1] = HEX[digest[i] & 0xf];
+            }
+            return new String(chars);
+        } catch (NoSuchAlgorithmException | IOException e) {
+            return Integer.toHexString(url.hashCode());
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.cache;
+
+import com.fllo.co.line.results.Response;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class MemoryCache {
+
+    private static final String[] DEFAULT_KEY_HEADERS = {
+            "Authorization", "Accept", "Accept-Language" };
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private static volatile MemoryCache installed = null;
+
+    private final long maxBytes;
+    private final long defaultTtl;
+    private final String[] keyHeaders;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * Memory cache of GET responses, bounded by size, with
+     * a time to live per entry. The key is made of the method,
+     * the URL and the Authorization, Accept and
+     * Accept-Language headers
+     *
+     * @param maxBytes (long) Maximum size of the entries in bytes
+     * @param defaultTtl (long) Time to live of an entry in ms
+     */
+    public MemoryCache(long maxBytes, long defaultTtl) {
+        this(maxBytes, defaultTtl, DEFAULT_KEY_HEADERS);
+    }
+
+    /**
+     * Memory cache of GET responses, bounded by size, with
+     * a time to live per entry
+     *
+     * @param maxBytes (long) Maximum size of the entries in bytes
+     * @param defaultTtl (long) Time to live of an entry in ms
+     * @param keyHeaders (String[]) Request headers part of the key
+     */
+    public MemoryCache(long maxBytes, long defaultTtl, String... keyHeaders) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes <= 0: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        this.defaultTtl = defaultTtl;
+        this.keyHeaders = keyHeaders;
+    }
+
+    /**
+     * Install the cache checked before every GET request
+     *
+     * @param cache (MemoryCache) Cache to use, null to disable it
+     */
+    public static void install(MemoryCache cache) {
+        installed = cache;
+    }
+
+    /**
+     * Get the installed cache
+     *
+     * @return The installed cache, null if disabled
+     */
+    public static MemoryCache getInstalled() {
+        return installed;
+    }
+
+    /**
+     * Build the key of a request
+     *
+     * @param method (String) HTTP method
+     * @param url (String) URL of the request
+     * @param headers (Iterable) Header properties of the request (can be 'null')
+     * @return The key of the request
+     */
+    public String key(String method, String url, Iterable<Map.Entry<String, Object>> headers) {
+        StringBuilder key = new StringBuilder(method).append(' ').append(url);
+        if (headers != null) {
+            for (String name : keyHeaders) {
+                for (Map.Entry<String, Object> header : headers) {
+                    if (name.equalsIgnoreCase(header.getKey())) {
+                        key.append('\n').append(name).append(':').append(header.getValue());
+                    }
+                }
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Get the default time to live of the entries
+     *
+     * @return Time to live in ms
+     */
+    public long getDefaultTtl() {
+        return defaultTtl;
+    }
+
+    /**
+     * Get a response which is still alive. Each caller gets
+     * its own copy, the stored one is never handed out
+     *
+     * @param key (String) Key of the request
+     * @return The response, or null if absent or expired
+     */
+    public synchronized Response get(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.expires <= System.currentTimeMillis()) {
+            entries.remove(key);
+            size -= entry.size;
+            entry = null;
+        }
+        if (entry == null) {
+            misses += 1;
+            return null;
+        }
+        hits += 1;
+        return entry.response.copy();
+    }
+
+    /**
+     * Store a copy of a response, then evict the least
+     * recently used ones over the maximum size. The caller
+     * checks that the response can be stored (no "no-store",
+     * no "private"), see CacheEntry.isStorable()
+     *
+     * @param key (String) Key of the request
+     * @param response (Response) Response to store
+     * @param ttl (long) Time to live in ms
+     */
+    public synchronized void put(String key, Response response, long ttl) {
+        if (ttl <= 0 || response.body == null) {
+            return;
+        }
+        long entrySize = ENTRY_OVERHEAD + 2L * (key.length() + response.body.length());
+        if (entrySize > maxBytes) {
+            return;
+        }
+
+        Entry previous = entries.put(key, new Entry(response.copy(),
+                System.currentTimeMillis() + ttl, entrySize));
+        if (previous != null) {
+            size -= previous.size;
+        }
+        size += entrySize;
+
+        Iterator<Entry> it = entries.values().iterator();
+        while (size > maxBytes && it.hasNext()) {
+            size -= it.next().size;
+            it.remove();
+        }
+    }
+
+    /**
+     * Remove every entry
+     */
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    /**
+     * Get the size of the entries
+     *
+     * @return Size in bytes
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Get the number of requests served by the cache
+     *
+     * @return Number of hits
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * Get the number of requests not found in the cache
+     *
+     * @return Number of misses
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Response kept in memory until its expiration
+     */
+    private static final class Entry {
+
+        final Response response;
+        final long expires;
+        final long size;
+
+        Entry(Response response, long expires, long size) {
+            this.response = response;
+            this.expires = expires;
+            this.size = size;
+        }
+    }
+}
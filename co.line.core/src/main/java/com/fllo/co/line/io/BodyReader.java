@@ -0,0 +1,150 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+
+public final class BodyReader {
+
+    public static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MAX_PRESIZE = 8 * 1024 * 1024;
+
+    private BodyReader() { }
+
+    /**
+     * Read a whole response body and decode it with the
+     * charset declared in its Content-Type (UTF-8 if none)
+     *
+     * @param in (InputStream) Body stream, not closed
+     * @param contentLength (long) Value of Content-Length, -1 if unknown
+     * @param contentType (String) Value of Content-Type, can be null
+     * @return The decoded body
+     * @throws IOException if the stream cannot be read
+     */
+    public static String read(InputStream in, long contentLength,
+                              String contentType) throws IOException {
+        Bytes body = readBytes(in, contentLength);
+        return new String(body.data, 0, body.length, charset(contentType));
+    }
+
+    /**
+     * Read a whole response body as the bytes sent by the
+     * server. The array is pre-sized from Content-Length
+     * when it is known
+     *
+     * @param in (InputStream) Body stream, not closed
+     * @param contentLength (long) Value of Content-Length, -1 if unknown
+     * @return The body bytes
+     * @throws IOException if the stream cannot be read
+     */
+    public static Bytes readBytes(InputStream in, long contentLength) throws IOException {
+        if (contentLength >= 0 && contentLength <= MAX_PRESIZE) {
+            byte[] data = new byte[(int) contentLength];
+            int length = 0;
+            int read;
+            while (length < data.length
+                    && (read = in.read(data, length, data.length - length)) != -1) {
+                length += read;
+            }
+            if (length < data.length) {
+                return new Bytes(data, length);
+            }
+            // Content-Length is only a hint: keep reading if the server sent more
+            Bytes body = new Bytes(data, length);
+            appendRemaining(in, body);
+            return body;
+        }
+
+        Bytes body = new Bytes(new byte[BufferPool.BUFFER_SIZE], 0);
+        appendRemaining(in, body);
+        return body;
+    }
+
+    /**
+     * Get the charset declared in a Content-Type value
+     *
+     * @param contentType (String) Value of Content-Type, can be null
+     * @return The declared charset, UTF-8 if none or unsupported
+     */
+    public static Charset charset(String contentType) {
+        if (contentType == null) {
+            return UTF_8;
+        }
+
+        for (String param : contentType.split(";")) {
+            String p = param.trim();
+            if (p.regionMatches(true, 0, "charset=", 0, 8)) {
+                String name = p.substring(8).trim();
+                if (name.length() > 1 && name.charAt(0) == '"') {
+                    name = name.substring(1, name.length() - 1);
+                }
+                try {
+                    return Charset.forName(name);
+                } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+                    return UTF_8;
+                }
+            }
+        }
+        return UTF_8;
+    }
+
+    /**
+     * Private: read the stream until its end into a body
+     *
+     * @param in (InputStream) Body stream
+     * @param body (Bytes) Bytes to complete
+     * @throws IOException if the stream cannot be read
+     */
+    private static void appendRemaining(InputStream in, Bytes body) throws IOException {
+        byte[] buffer = BufferPool.acquire();
+        try {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                body.append(buffer, read);
+            }
+        } finally {
+            BufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Growable byte array holding a response body
+     */
+    public static final class Bytes {
+
+        public byte[] data;
+        public int length;
+
+        Bytes(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+
+        void append(byte[] buffer, int count) {
+            if (length + count > data.length) {
+                byte[] grown = new byte[Math.max(data.length * 2, length + count)];
+                System.arraycopy(data, 0, grown, 0, length);
+                data = grown;
+            }
+            System.arraycopy(buffer, 0, data, length, count);
+            length += count;
+        }
+    }
+}
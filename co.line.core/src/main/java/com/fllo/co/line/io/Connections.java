@@ -0,0 +1,108 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+public final class Connections {
+
+    private static final int MAX_DRAIN = 64 * 1024;
+
+    private Connections() { }
+
+    /**
+     * Configure the keep-alive pool of HttpURLConnection. Should
+     * be called before the first request
+     *
+     * @param maxConnections (int) Idle connections kept per host
+     * @param duration (long) Time in ms an idle connection is kept
+     */
+    public static void setKeepAlive(int maxConnections, long duration) {
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", String.valueOf(maxConnections));
+        // Read by the Android implementation of HttpURLConnection
+        System.setProperty("http.keepAliveDuration", String.valueOf(duration));
+    }
+
+    /**
+     * Disable the reuse of connections
+     */
+    public static void disableKeepAlive() {
+        System.setProperty("http.keepAlive", "false");
+    }
+
+    /**
+     * Read what is left of a body, then close it, so the connection
+     * can go back to the keep-alive pool. Bodies with more than 64 KB
+     * left are only closed
+     *
+     * @param in (InputStream) Body of a response (can be 'null')
+     * @return true if the body was read until its end
+     */
+    public static boolean release(InputStream in) {
+        if (in == null) {
+            return true;
+        }
+
+        boolean drained = false;
+        byte[] buffer = BufferPool.acquire();
+        try {
+            long left = MAX_DRAIN;
+            int read;
+            while (left > 0 && (read = in.read(buffer)) != -1) {
+                left -= read;
+            }
+            drained = left > 0;
+        } catch (IOException e) {
+            drained = false;
+        } finally {
+            BufferPool.release(buffer);
+            try {
+                in.close();
+            } catch (IOException ignored) {
+                // the connection will not be reused
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * Open a connection to a server and put it in the keep-alive
+     * pool: DNS, TCP and TLS are ready for the next request
+     *
+     * @param url (String) URL of the server, or only its host
+     * @param connectTimeout (int) Connection timeout in ms
+     * @param readTimeout (int) Read timeout in ms
+     * @throws IOException if the server can't be reached
+     */
+    public static void preconnect(String url, int connectTimeout, int readTimeout)
+            throws IOException {
+        String target = url.contains("://") ? url : "https://" + url + "/";
+        HttpURLConnection http = (HttpURLConnection) new URL(target).openConnection();
+        http.setConnectTimeout(connectTimeout);
+        http.setReadTimeout(readTimeout);
+        http.setRequestMethod("HEAD");
+        http.setUseCaches(false);
+        int status = http.getResponseCode();
+        InputStream in = status < 400 ? http.getInputStream() : http.getErrorStream();
+        if (!release(in)) {
+            http.disconnect();
+        }
+    }
+}
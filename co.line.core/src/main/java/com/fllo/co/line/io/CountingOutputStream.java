@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.io;
+
+import com.fllo.co.line.callbacks.Progress;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+public class CountingOutputStream extends FilterOutputStream {
+
+    private static final long MIN_STEP = 16 * 1024;
+
+    private final long total;
+    private final Progress progress;
+    private final long step;
+    private long count = 0;
+    private long reported = 0;
+
+    /**
+     * Stream which counts the bytes written to another one
+     *
+     * @param out (OutputStream) Stream to count
+     */
+    public CountingOutputStream(OutputStream out) {
+        this(out, -1, null);
+    }
+
+    /**
+     * Stream which counts the bytes written to another one
+     * and reports them, at most once per percent or 16KB
+     *
+     * @param out (OutputStream) Stream to count
+     * @param total (long) Expected number of bytes, -1 if unknown
+     * @param progress (Progress) Listener of the progress (can be 'null')
+     */
+    public CountingOutputStream(OutputStream out, long total, Progress progress) {
+        super(out);
+        this.total = total;
+        this.progress = progress;
+        this.step = Math.max(MIN_STEP, total / 100);
+    }
+
+    /**
+     * Get the number of bytes written so far
+     *
+     * @return Number of bytes
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        count(1);
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        out.write(buffer, offset, length);
+        count(length);
+    }
+
+    /**
+     * Report the last bytes written, if not done yet
+     */
+    public void complete() {
+        if (progress != null && reported != count) {
+            reported = count;
+            progress.onProgress(count, total);
+        }
+    }
+
+    /**
+     * Private: add written bytes and report them once
+     * the step is reached
+     */
+    private void count(int length) {
+        count += length;
+        if (progress != null && count - reported >= step) {
+            reported = count;
+            progress.onProgress(count, total);
+        }
+    }
+}
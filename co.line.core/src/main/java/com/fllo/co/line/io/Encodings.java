@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+public final class Encodings {
+
+    public static final String ACCEPT_ENCODING = "gzip, deflate";
+    public static final String GZIP = "gzip";
+
+    private Encodings() { }
+
+    /**
+     * Wrap a response body with the decompression of
+     * its Content-Encoding
+     *
+     * @param in (InputStream) Body as sent by the server
+     * @param contentEncoding (String) Value of Content-Encoding (can be 'null')
+     * @return The decoded body, or the same stream if not encoded or empty
+     * @throws IOException if the gzip header cannot be read
+     */
+    public static InputStream decode(InputStream in, String contentEncoding) throws IOException {
+        if (contentEncoding == null) {
+            return in;
+        }
+
+        String encoding = contentEncoding.trim().toLowerCase(Locale.US);
+        if (!encoding.equals("gzip") && !encoding.equals("x-gzip")
+                && !encoding.equals("deflate")) {
+            return in;
+        }
+
+        // Responses without body (HEAD, 204) keep their Content-Encoding
+        PushbackInputStream body = new PushbackInputStream(in, 2);
+        int first = body.read();
+        if (first == -1) {
+            return body;
+        }
+
+        if (!encoding.equals("deflate")) {
+            body.unread(first);
+            return new GZIPInputStream(body, BufferPool.BUFFER_SIZE);
+        }
+
+        // "deflate" is zlib-wrapped, but some servers send raw deflate
+        int second = body.read();
+        boolean zlib = second != -1 && (first & 0x0f) == 8
+                && ((first << 8) | second) % 31 == 0;
+        if (second != -1) {
+            body.unread(second);
+        }
+        body.unread(first);
+        return new InflaterInputStream(body, new Inflater(!zlib), BufferPool.BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                // A given Inflater isn't ended by the stream: free its native memory
+                try {
+                    super.close();
+                } finally {
+                    inf.end();
+                }
+            }
+        };
+    }
+}
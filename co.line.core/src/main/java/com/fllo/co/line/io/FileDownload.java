@@ -0,0 +1,232 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.io;
+
+import com.fllo.co.line.callbacks.Progress;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+public class FileDownload {
+
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File target;
+    private final File part;
+    private final File meta;
+
+    /**
+     * Download of a body into a file. The body is written to
+     * a ".part" file, renamed once complete. The validator of
+     * the response (ETag or Last-Modified) is kept next to it
+     * in a ".part.meta" file, so an interrupted download can
+     * be resumed with a Range request
+     *
+     * @param target (File) Destination of the body
+     */
+    public FileDownload(File target) {
+        this.target = target;
+        this.part = new File(target.getPath() + ".part");
+        this.meta = new File(target.getPath() + ".part.meta");
+    }
+
+    /**
+     * Get the destination of the body
+     *
+     * @return The target file
+     */
+    public File getTarget() {
+        return target;
+    }
+
+    /**
+     * Get the partial file, written before the rename
+     *
+     * @return The ".part" file
+     */
+    public File getPartFile() {
+        return part;
+    }
+
+    /**
+     * Get the offset to resume the download from. A partial
+     * file without validator cannot be resumed safely and
+     * is deleted
+     *
+     * @return Number of bytes already downloaded, 0 to start over
+     */
+    public long resumeFrom() {
+        if (part.length() > 0 && getValidator() != null) {
+            return part.length();
+        }
+        discard();
+        return 0;
+    }
+
+    /**
+     * Get the validator of the partial download, sent
+     * in the If-Range header
+     *
+     * @return ETag or Last-Modified, null if unknown
+     */
+    public String getValidator() {
+        if (!meta.isFile()) {
+            return null;
+        }
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(meta), BodyReader.UTF_8));
+            try {
+                return reader.readLine();
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Write a body into the partial file through a FileChannel
+     *
+     * @param in (InputStream) Body of the response
+     * @param append (boolean) true to resume after the existing bytes
+     * @param validator (String) Strong validator of the response (can be 'null')
+     * @param total (long) Complete length of the file, -1 if unknown
+     * @param progress (Progress) Listener of the download (can be 'null')
+     * @return Length of the partial file
+     * @throws IOException if the body cannot be read or written
+     */
+    public long write(InputStream in, boolean append, String validator,
+                      long total, Progress progress) throws IOException {
+        if (!append) {
+            File parent = target.getAbsoluteFile().getParentFile();
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Cannot create " + parent);
+            }
+            saveValidator(validator);
+        }
+
+        long written = append ? part.length() : 0;
+        long step = Math.max(BUFFER_SIZE, total / 100);
+        long reported = written;
+
+        FileOutputStream out = new FileOutputStream(part, append);
+        try {
+            FileChannel channel = out.getChannel();
+            ReadableByteChannel source = Channels.newChannel(in);
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            while (source.read(buffer) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    written += channel.write(buffer);
+                }
+                buffer.clear();
+
+                if (progress != null && written - reported >= step) {
+                    reported = written;
+                    progress.onProgress(written, total);
+                }
+            }
+            channel.force(false);
+        } finally {
+            out.close();
+        }
+
+        if (progress != null && reported != written) {
+            progress.onProgress(written, total);
+        }
+        return written;
+    }
+
+    /**
+     * Move the complete partial file to the target
+     *
+     * @throws IOException if the file cannot be renamed
+     */
+    public void complete() throws IOException {
+        if (target.exists() && !target.delete()) {
+            throw new IOException("Cannot replace " + target);
+        }
+        if (!part.renameTo(target)) {
+            throw new IOException("Cannot rename " + part + " to " + target);
+        }
+        meta.delete();
+    }
+
+    /**
+     * Delete the partial file and its validator
+     */
+    public void discard() {
+        part.delete();
+        meta.delete();
+    }
+
+    /**
+     * Parse a "bytes first-last/total" or "bytes &#42;/total"
+     * Content-Range header
+     *
+     * @param header (String) Value of the header (can be 'null')
+     * @return first, last and total, -1 when unknown, or null
+     * if the header is missing or invalid
+     */
+    public static long[] contentRange(String header) {
+        if (header == null || !header.startsWith("bytes ")) {
+            return null;
+        }
+        try {
+            int slash = header.indexOf('/');
+            String span = header.substring(6, slash).trim();
+            String size = header.substring(slash + 1).trim();
+            long total = "*".equals(size) ? -1 : Long.parseLong(size);
+            if ("*".equals(span)) {
+                return new long[] { -1, -1, total };
+            }
+            int dash = span.indexOf('-');
+            return new long[] { Long.parseLong(span.substring(0, dash)),
+                    Long.parseLong(span.substring(dash + 1)), total };
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Private: keep the validator of a new download,
+     * or forget it when the response has none
+     */
+    private void saveValidator(String validator) throws IOException {
+        if (validator == null) {
+            meta.delete();
+            return;
+        }
+        OutputStream out = new FileOutputStream(meta);
+        try {
+            out.write(validator.getBytes(BodyReader.UTF_8));
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.io;
+
+import com.fllo.co.line.callbacks.Progress;
+import com.fllo.co.line.metrics.Traffic;
+import com.fllo.co.line.policies.CircuitBreaker;
+import com.fllo.co.line.policies.RetryBudget;
+import com.fllo.co.line.policies.RetryPolicy;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SegmentedDownload {
+
+    public static final long MIN_SEGMENT_SIZE = 512 * 1024;
+    private static final int MAX_THREADS = 8;
+
+    private static ThreadPoolExecutor executor = null;
+
+    private final URL url;
+    private final Map<String, String> headers;
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final FileDownload download;
+    private final AtomicLong transferred = new AtomicLong();
+    private final AtomicLong reported = new AtomicLong();
+    private long length = -1;
+    private String validator;
+    private RetryPolicy retryPolicy;
+
+    /**
+     * Download of a file split in byte ranges fetched concurrently,
+     * each one with its own connection. The segments run in a
+     * dedicated pool, so they never wait for a worker of the
+     * dispatcher which started them
+     *
+     * @param url (URL) URL of the file
+     * @param headers (Map) Header properties of the request (can be 'null')
+     * @param connectTimeout (int) Connection timeout in ms
+     * @param readTimeout (int) Read timeout in ms
+     * @param download (FileDownload) Destination of the file
+     */
+    public SegmentedDownload(URL url, Map<String, String> headers,
+                             int connectTimeout, int readTimeout, FileDownload download) {
+        this.url = url;
+        this.headers = headers;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.download = download;
+    }
+
+    /**
+     * Set the retry policy of the segments
+     *
+     * @param policy (RetryPolicy) Policy, null for the default one
+     */
+    public void setRetryPolicy(RetryPolicy policy) {
+        this.retryPolicy = policy;
+    }
+
+    /**
+     * Send a HEAD request to learn the size of the file
+     * and check that the server accepts byte ranges
+     *
+     * @return true if the file can be downloaded in segments
+     * @throws IOException if the HEAD request fails
+     */
+    public boolean probe() throws IOException {
+        HttpURLConnection http = open();
+        try {
+            http.setRequestMethod("HEAD");
+            if (http.getResponseCode() != HttpURLConnection.HTTP_OK
+                    || !"bytes".equalsIgnoreCase(http.getHeaderField("Accept-Ranges"))) {
+                return false;
+            }
+            String contentLength = http.getHeaderField("Content-Length");
+            length = contentLength != null ? Long.parseLong(contentLength.trim()) : -1;
+
+            String etag = http.getHeaderField("ETag");
+            validator = etag != null && !etag.startsWith("W/")
+                    ? etag : http.getHeaderField("Last-Modified");
+        } catch (NumberFormatException e) {
+            return false;
+        } finally {
+            http.disconnect();
+        }
+        return length >= 2 * MIN_SEGMENT_SIZE;
+    }
+
+    /**
+     * Get the size of the file, known after probe()
+     *
+     * @return Length in bytes, -1 if unknown
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Download every segment into a preallocated file, with
+     * positional writes, then check its size and rename it
+     *
+     * @param segments (int) Maximum number of segments
+     * @param progress (Progress) Listener of the download (can be 'null')
+     * @return The complete file
+     * @throws IOException if a segment fails, or the file is incomplete
+     * @throws InterruptedException if the download is cancelled
+     */
+    public File run(int segments, final Progress progress)
+            throws IOException, InterruptedException {
+        int count = (int) Math.max(1, Math.min(segments, length / MIN_SEGMENT_SIZE));
+        long size = (length + count - 1) / count;
+
+        download.discard();
+        File parent = download.getTarget().getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        RandomAccessFile file = new RandomAccessFile(download.getPartFile(), "rw");
+        List<Future<Long>> futures = new ArrayList<>(count);
+        try {
+            file.setLength(length);
+            final FileChannel channel = file.getChannel();
+            final long step = Math.max(FileDownload.BUFFER_SIZE, length / 100);
+            for (long first = 0; first < length; first += size) {
+                final long from = first;
+                final long to = Math.min(first + size, length) - 1;
+                futures.add(executor().submit(new Callable<Long>() {
+                    @Override
+                    public Long call() throws IOException {
+                        return segment(channel, from, to, step, progress);
+                    }
+                }));
+            }
+
+            long written = 0;
+            for (Future<Long> future : futures) {
+                written += future.get();
+            }
+            channel.force(false);
+
+            if (written != length || file.length() != length) {
+                throw new IOException("Incomplete download: " + written + " of " + length + " bytes");
+            }
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException
+                    ? (IOException) e.getCause() : new IOException(e.getCause());
+        } finally {
+            for (Future<Long> future : futures) {
+                future.cancel(true);
+            }
+            file.close();
+        }
+
+        if (progress != null && reported.get() != length) {
+            progress.onProgress(length, length);
+        }
+        download.complete();
+        return download.getTarget();
+    }
+
+    /**
+     * Private: download a byte range, resuming it from its last
+     * written byte after a failure or a response ending early.
+     * An attempt which writes nothing is a failure, reported to
+     * the circuit breaker of the host and retried after the
+     * backoff of the retry policy, within the retry budget
+     *
+     * @return Number of bytes written
+     */
+    private long segment(FileChannel channel, long from, long to,
+                         long step, Progress progress) throws IOException {
+        RetryPolicy policy = retryPolicy != null ? retryPolicy : RetryPolicy.getDefault();
+        CircuitBreaker breaker = CircuitBreaker.forHost(url.getHost().toLowerCase());
+        RetryBudget.getInstance().deposit();
+
+        long[] position = { from };
+        int failures = 0;
+        while (position[0] <= to) {
+            if (!breaker.allowRequest()) {
+                throw new IOException(CircuitBreaker.EXCEPTION + ": range " + position[0]
+                        + "-" + to + " not sent");
+            }
+
+            long start = position[0];
+            IOException failure = null;
+            try {
+                fetch(channel, position, to, step, progress);
+            } catch (IOException e) {
+                failure = e;
+            } catch (RuntimeException e) {
+                breaker.releaseProbe();
+                throw e;
+            }
+            if (position[0] > start) {
+                breaker.onSuccess();
+                continue;
+            }
+
+            breaker.onFailure();
+            if (failure == null) {
+                failure = new IOException("Range " + start + "-" + to + " ended without any byte");
+            }
+            if (failures >= policy.getMaxRetries() || Thread.currentThread().isInterrupted()
+                    || !RetryBudget.getInstance().tryWithdraw()) {
+                throw failure;
+            }
+            try {
+                Thread.sleep(policy.delay(failures++));
+            } catch (InterruptedException e) {
+                // The download is cancelled
+                Thread.currentThread().interrupt();
+                throw failure;
+            }
+        }
+        return position[0] - from;
+    }
+
+    /**
+     * Private: write a byte range at its position in the file,
+     * moving {long[] position} after each write
+     *
+     * @throws IOException if the range is not honored or the connection fails
+     */
+    private void fetch(FileChannel channel, long[] position, long to,
+                       long step, Progress progress) throws IOException {
+        HttpURLConnection http = open();
+        CountingInputStream in = null;
+        try {
+            http.setRequestProperty("Range", "bytes=" + position[0] + "-" + to);
+            if (validator != null) {
+                http.setRequestProperty("If-Range", validator);
+            }
+            int status = http.getResponseCode();
+            long[] range = FileDownload.contentRange(http.getHeaderField("Content-Range"));
+            if (status != HttpURLConnection.HTTP_PARTIAL
+                    || range == null || range[0] != position[0] || range[2] != length) {
+                throw new IOException("Range " + position[0] + "-" + to + " not honored: " + status);
+            }
+
+            in = new CountingInputStream(http.getInputStream());
+            ReadableByteChannel source = Channels.newChannel(in);
+            ByteBuffer buffer = ByteBuffer.allocate(FileDownload.BUFFER_SIZE);
+            while (position[0] <= to && source.read(buffer) != -1) {
+                buffer.flip();
+                if (buffer.remaining() > to - position[0] + 1) {
+                    buffer.limit((int) (to - position[0] + 1));
+                }
+                while (buffer.hasRemaining()) {
+                    int written = channel.write(buffer, position[0]);
+                    position[0] += written;
+                    report(written, step, progress);
+                }
+                buffer.clear();
+            }
+            in.close();
+        } catch (IOException e) {
+            http.disconnect();
+            throw e;
+        } finally {
+            if (in != null) {
+                Traffic.getInstance().received(in.getCount(), in.getCount());
+            }
+        }
+    }
+
+    /**
+     * Private: add downloaded bytes and report them once
+     * the step is reached, from any segment
+     */
+    private void report(int read, long step, Progress progress) {
+        long total = transferred.addAndGet(read);
+        long last = reported.get();
+        if (progress != null && total - last >= step && reported.compareAndSet(last, total)) {
+            progress.onProgress(total, length);
+        }
+    }
+
+    /**
+     * Private: open a connection with the headers of the request
+     */
+    private HttpURLConnection open() throws IOException {
+        HttpURLConnection http = (HttpURLConnection) url.openConnection();
+        if (headers != null) {
+            for (Map.Entry<String, String> entry : headers.entrySet()) {
+                http.setRequestProperty(entry.getKey(), entry.getValue());
+            }
+        }
+        http.setRequestProperty("Accept-Encoding", "identity");
+        http.setConnectTimeout(connectTimeout);
+        http.setReadTimeout(readTimeout);
+        return http;
+    }
+
+    /**
+     * Private: get the pool of the segments, create it when needed
+     */
+    private static synchronized ThreadPoolExecutor executor() {
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS,
+                    30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        private final AtomicInteger count = new AtomicInteger(1);
+
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "Co.line segment #" + count.getAndIncrement());
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+}
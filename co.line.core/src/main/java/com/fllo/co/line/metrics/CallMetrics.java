@@ -0,0 +1,75 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.metrics;
+
+public class CallMetrics {
+
+    /**
+     * Origin of the response
+     */
+    public enum CacheStatus {
+        NONE,           // no cache for this request
+        MISS,           // cacheable, fetched from the network
+        MEMORY_HIT,     // served from the memory cache
+        DISK_HIT,       // served from the disk cache
+        REVALIDATED     // stored response confirmed by a 304
+    }
+
+    public final long requestId;
+    public final String method;
+    public final String url;
+    public int status;
+    public boolean success;
+    public int attempts;
+    public CacheStatus cacheStatus = CacheStatus.NONE;
+
+    // Durations in nanoseconds, -1 when the step did not happen
+    public long queueWait = -1;
+    public long connect = -1;
+    public long firstByte = -1;
+    public long bodyRead = -1;
+    public long deserialization = -1;
+    public long total = -1;
+
+    // Bytes of the bodies, on the network and once decompressed
+    public long requestBytes;
+    public long responseBytes;
+    public long decodedBytes;
+
+    /**
+     * Timings and sizes of one call, reported to the
+     * MetricsListener once the call is done
+     *
+     * @param requestId (long) Identifier of the call
+     * @param method (String) HttpMethod verb of the request
+     * @param url (String) URL of the request
+     */
+    public CallMetrics(long requestId, String method, String url) {
+        this.requestId = requestId;
+        this.method = method;
+        this.url = url;
+    }
+
+    @Override
+    public String toString() {
+        return "#" + requestId + " " + method + " " + url + " " + status
+                + " cache=" + cacheStatus + " attempts=" + attempts
+                + " queue=" + queueWait / 1000 + "us connect=" + connect / 1000
+                + "us ttfb=" + firstByte / 1000 + "us read=" + bodyRead / 1000
+                + "us parse=" + deserialization / 1000 + "us total=" + total / 1000
+                + "us sent=" + requestBytes + "B received=" + responseBytes + "B";
+    }
+}
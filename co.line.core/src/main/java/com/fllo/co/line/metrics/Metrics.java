@@ -0,0 +1,82 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class Metrics {
+
+    private static final Metrics instance = new Metrics();
+
+    private final AtomicLong ids = new AtomicLong();
+    private volatile MetricsListener listener;
+
+    /**
+     * Protected: metrics' empty constructor.
+     *
+     */
+    protected Metrics() { }
+
+    /**
+     * Get the reporter of every call
+     *
+     * @return An instance of metrics class
+     */
+    public static Metrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * Set the listener of the calls metrics. It is called
+     * in the worker threads, so it must be thread-safe
+     * and return quickly
+     *
+     * @param listener (MetricsListener) Listener, null to disable
+     */
+    public void setListener(MetricsListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Check if a listener is set
+     *
+     * @return true if the metrics are reported
+     */
+    public boolean isEnabled() {
+        return listener != null;
+    }
+
+    /**
+     * Get a new identifier for a call
+     *
+     * @return Unique identifier, from 1
+     */
+    public long nextRequestId() {
+        return ids.incrementAndGet();
+    }
+
+    /**
+     * Report the metrics of a finished call
+     *
+     * @param metrics (CallMetrics) Timings and sizes of the call
+     */
+    public void report(CallMetrics metrics) {
+        MetricsListener current = listener;
+        if (current != null) {
+            current.onCall(metrics);
+        }
+    }
+}
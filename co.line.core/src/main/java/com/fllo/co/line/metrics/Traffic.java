@@ -0,0 +1,104 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class Traffic {
+
+    private static final Traffic instance = new Traffic();
+
+    private final AtomicLong receivedWire = new AtomicLong();
+    private final AtomicLong receivedDecoded = new AtomicLong();
+    private final AtomicLong sentRaw = new AtomicLong();
+    private final AtomicLong sentWire = new AtomicLong();
+
+    /**
+     * Protected: traffic's empty constructor.
+     *
+     */
+    protected Traffic() { }
+
+    /**
+     * Get the counters of every request
+     *
+     * @return An instance of traffic class
+     */
+    public static Traffic getInstance() {
+        return instance;
+    }
+
+    /**
+     * Count a response body
+     *
+     * @param wire (long) Bytes received from the network
+     * @param decoded (long) Bytes after decompression
+     */
+    public void received(long wire, long decoded) {
+        receivedWire.addAndGet(wire);
+        receivedDecoded.addAndGet(decoded);
+    }
+
+    /**
+     * Count a request body
+     *
+     * @param raw (long) Bytes of the body before compression
+     * @param wire (long) Bytes sent to the network
+     */
+    public void sent(long raw, long wire) {
+        sentRaw.addAndGet(raw);
+        sentWire.addAndGet(wire);
+    }
+
+    /**
+     * Get the bytes of response bodies received from the network
+     *
+     * @return Number of bytes
+     */
+    public long getReceivedBytes() {
+        return receivedWire.get();
+    }
+
+    /**
+     * Get the bytes of request bodies sent to the network
+     *
+     * @return Number of bytes
+     */
+    public long getSentBytes() {
+        return sentWire.get();
+    }
+
+    /**
+     * Get the bytes saved by the compression of
+     * responses and request bodies
+     *
+     * @return Number of bytes not transferred
+     */
+    public long getSavedBytes() {
+        return (receivedDecoded.get() - receivedWire.get())
+                + (sentRaw.get() - sentWire.get());
+    }
+
+    /**
+     * Reset every counter
+     */
+    public void reset() {
+        receivedWire.set(0);
+        receivedDecoded.set(0);
+        sentRaw.set(0);
+        sentWire.set(0);
+    }
+}
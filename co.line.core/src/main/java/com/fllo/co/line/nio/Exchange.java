@@ -0,0 +1,475 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.nio;
+
+import com.fllo.co.line.transport.TransportCallback;
+import com.fllo.co.line.transport.TransportRequest;
+import com.fllo.co.line.transport.TransportResponse;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+final class Exchange {
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static final byte[] EMPTY = new byte[0];
+    private static final int MAX_LINE = 8 * 1024;
+    private static final int MAX_HEAD = 64 * 1024;
+    private static final int MAX_BODY = 32 * 1024 * 1024;
+    private static final int CHUNK_BUFFER = 8 * 1024;
+
+    // Steps of the response, in order
+    private static final int STATUS_LINE = 0;
+    private static final int HEADERS = 1;
+    private static final int FIXED_BODY = 2;
+    private static final int UNTIL_CLOSE = 3;
+    private static final int CHUNK_SIZE = 4;
+    private static final int CHUNK_DATA = 5;
+    private static final int CHUNK_END = 6;
+    private static final int TRAILERS = 7;
+    private static final int DONE = 8;
+
+    final TransportRequest request;
+    final TransportCallback callback;
+    final InetSocketAddress address;
+    final String route;
+    private final byte[] message;
+    long startAt;
+    SocketChannel channel;
+    SelectionKey key;
+    ByteBuffer out;
+    boolean reused;
+    boolean connecting;
+    boolean received;
+    boolean keepAlive;
+    long deadline;
+    private long opened;
+    private long connected;
+    private long sent;
+    private long firstByte;
+    private int step;
+    private byte[] line = new byte[256];
+    private int lineLength;
+    private int headSize;
+    private int status;
+    private boolean http11;
+    private Map<String, List<String>> headers;
+    private byte[] body;
+    private int length;
+    private long remaining;
+
+    /**
+     * Request and response on one connection
+     *
+     * @param request (TransportRequest) Request to send
+     * @param callback (TransportCallback) Receiver of the response
+     * @param address (InetSocketAddress) Resolved address of the server
+     */
+    Exchange(TransportRequest request, TransportCallback callback, InetSocketAddress address) {
+        this.request = request;
+        this.callback = callback;
+        this.address = address;
+        this.route = request.url.getHost() + ":" + address.getPort();
+        this.message = encode(request);
+    }
+
+    /**
+     * Protected: encode an HTTP/1.1 request, once,
+     * so a retry sends the same bytes
+     *
+     * @param request (TransportRequest) Request to encode
+     * @return Head and body of the request
+     */
+    static byte[] encode(TransportRequest request) {
+        URL url = request.url;
+        StringBuilder head = new StringBuilder(256);
+        String path = url.getFile();
+        head.append(request.method).append(' ').append(path.length() > 0 ? path : "/")
+                .append(" HTTP/1.1\r\nHost: ").append(url.getHost());
+        if (url.getPort() != -1) {
+            head.append(':').append(url.getPort());
+        }
+        head.append("\r\n");
+        boolean userAgent = false;
+        for (Map.Entry<String, String> entry : request.headers.entrySet()) {
+            String name = entry.getKey();
+            if ("Host".equalsIgnoreCase(name) || "Content-Length".equalsIgnoreCase(name)
+                    || "Transfer-Encoding".equalsIgnoreCase(name)) {
+                continue;
+            }
+            userAgent |= "User-Agent".equalsIgnoreCase(name);
+            head.append(name).append(": ").append(entry.getValue()).append("\r\n");
+        }
+        if (!userAgent) {
+            head.append("User-Agent: Co.line\r\n");
+        }
+        if (request.body != null) {
+            head.append("Content-Length: ").append(request.body.length).append("\r\n");
+        }
+        head.append("\r\n");
+
+        byte[] bytes = head.toString().getBytes(ISO_8859_1);
+        if (request.body == null) {
+            return bytes;
+        }
+        byte[] encoded = new byte[bytes.length + request.body.length];
+        System.arraycopy(bytes, 0, encoded, 0, bytes.length);
+        System.arraycopy(request.body, 0, encoded, bytes.length, request.body.length);
+        return encoded;
+    }
+
+    /**
+     * Start the exchange on a connection, from the beginning
+     *
+     * @param channel (SocketChannel) New or idle connection
+     * @param reused (boolean) true for a connection of the idle pool
+     * @param now (long) Current System.nanoTime()
+     */
+    void start(SocketChannel channel, boolean reused, long now) {
+        this.channel = channel;
+        this.reused = reused;
+        this.connecting = !reused;
+        this.received = false;
+        this.keepAlive = false;
+        this.out = ByteBuffer.wrap(message);
+        this.opened = now;
+        this.connected = now;
+        this.step = STATUS_LINE;
+        this.lineLength = 0;
+        this.headSize = 0;
+        this.body = null;
+        this.length = 0;
+        this.deadline = deadline(now, reused ? request.readTimeout : request.connectTimeout);
+    }
+
+    /**
+     * Check if the exchange can be started again on a new connection:
+     * the request was not answered, and it is idempotent or not a byte
+     * of it reached the server
+     *
+     * @return true if sending the request again is safe
+     */
+    boolean canResend() {
+        if (!reused || received) {
+            return false;
+        }
+        String method = request.method;
+        return out.position() == 0 || "GET".equals(method) || "HEAD".equals(method)
+                || "PUT".equals(method) || "DELETE".equals(method) || "OPTIONS".equals(method);
+    }
+
+    /**
+     * The connection is established
+     *
+     * @param now (long) Current System.nanoTime()
+     */
+    void connected(long now) {
+        this.connecting = false;
+        this.connected = now;
+        this.deadline = deadline(now, request.readTimeout);
+    }
+
+    /**
+     * Some bytes of the request were written
+     *
+     * @param now (long) Current System.nanoTime()
+     * @return true if the whole request is sent
+     */
+    boolean written(long now) {
+        this.deadline = deadline(now, request.readTimeout);
+        if (out.hasRemaining()) {
+            return false;
+        }
+        this.sent = now;
+        return true;
+    }
+
+    /**
+     * Parse the bytes received from the server
+     *
+     * @param in (ByteBuffer) Bytes read from the connection
+     * @param now (long) Current System.nanoTime()
+     * @return true if the response is complete
+     * @throws IOException if the response is malformed or too large
+     */
+    boolean read(ByteBuffer in, long now) throws IOException {
+        if (!received) {
+            received = true;
+            firstByte = now;
+        }
+        this.deadline = deadline(now, request.readTimeout);
+
+        while (in.hasRemaining() && step != DONE) {
+            switch (step) {
+                case FIXED_BODY:
+                case CHUNK_DATA: {
+                    int n = (int) Math.min(remaining, in.remaining());
+                    in.get(body, length, n);
+                    length += n;
+                    remaining -= n;
+                    if (remaining == 0) {
+                        step = step == FIXED_BODY ? DONE : CHUNK_END;
+                    }
+                    break;
+                }
+                case UNTIL_CLOSE: {
+                    int n = in.remaining();
+                    ensure(n);
+                    in.get(body, length, n);
+                    length += n;
+                    break;
+                }
+                default:
+                    if (readLine(in)) {
+                        onLine(new String(line, 0, lineLength, ISO_8859_1));
+                        lineLength = 0;
+                    }
+            }
+        }
+
+        if (step == DONE && in.hasRemaining()) {
+            // Bytes after the response, the connection can't be trusted
+            keepAlive = false;
+        }
+        return step == DONE;
+    }
+
+    /**
+     * The server closed the connection
+     *
+     * @throws IOException if the response isn't complete
+     */
+    void endOfStream() throws IOException {
+        if (step != UNTIL_CLOSE) {
+            throw new IOException("Unexpected end of stream");
+        }
+        step = DONE;
+        keepAlive = false;
+    }
+
+    /**
+     * Get the complete response
+     *
+     * @return Response of the server
+     */
+    TransportResponse response() {
+        return new TransportResponse(status, headers, body, length,
+                reused ? 0 : connected - opened, received ? firstByte - sent : -1);
+    }
+
+    /**
+     * Private: add the bytes of a line until its end,
+     * without the line break
+     *
+     * @param in (ByteBuffer) Bytes read from the connection
+     * @return true if the line is complete
+     * @throws IOException if the line or the head is too long
+     */
+    private boolean readLine(ByteBuffer in) throws IOException {
+        while (in.hasRemaining()) {
+            byte b = in.get();
+            if (step <= HEADERS && ++headSize > MAX_HEAD) {
+                throw new IOException("Response head too large");
+            }
+            if (b == '\n') {
+                if (lineLength > 0 && line[lineLength - 1] == '\r') {
+                    lineLength -= 1;
+                }
+                return true;
+            }
+            if (lineLength == MAX_LINE) {
+                throw new IOException("Response line too long");
+            }
+            if (lineLength == line.length) {
+                line = Arrays.copyOf(line, lineLength * 2);
+            }
+            line[lineLength++] = b;
+        }
+        return false;
+    }
+
+    /**
+     * Private: handle a complete line of the response
+     *
+     * @param text (String) Line, without the line break
+     * @throws IOException if the line is malformed
+     */
+    private void onLine(String text) throws IOException {
+        switch (step) {
+            case STATUS_LINE: {
+                int space = text.indexOf(' ');
+                if (!text.startsWith("HTTP/1.") || space < 0 || text.length() < space + 4) {
+                    throw new IOException("Unexpected status line: " + text);
+                }
+                try {
+                    status = Integer.parseInt(text.substring(space + 1, space + 4));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Unexpected status line: " + text);
+                }
+                http11 = text.startsWith("HTTP/1.1");
+                headers = TransportResponse.newHeaders();
+                step = HEADERS;
+                break;
+            }
+            case HEADERS: {
+                if (text.length() == 0) {
+                    startBody();
+                    break;
+                }
+                int colon = text.indexOf(':');
+                if (colon <= 0) {
+                    throw new IOException("Unexpected header line: " + text);
+                }
+                TransportResponse.addHeader(headers, text.substring(0, colon).trim(),
+                        text.substring(colon + 1).trim());
+                break;
+            }
+            case CHUNK_SIZE: {
+                int extension = text.indexOf(';');
+                long size;
+                try {
+                    size = Long.parseLong((extension >= 0
+                            ? text.substring(0, extension) : text).trim(), 16);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Unexpected chunk size: " + text);
+                }
+                if (size < 0) {
+                    throw new IOException("Unexpected chunk size: " + text);
+                }
+                if (size == 0) {
+                    step = TRAILERS;
+                } else {
+                    ensure(size);
+                    remaining = size;
+                    step = CHUNK_DATA;
+                }
+                break;
+            }
+            case CHUNK_END:
+                if (text.length() != 0) {
+                    throw new IOException("Unexpected end of chunk: " + text);
+                }
+                step = CHUNK_SIZE;
+                break;
+            case TRAILERS:
+                if (text.length() == 0) {
+                    step = DONE;
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Private: choose how the body is delimited,
+     * once the head is read
+     *
+     * @throws IOException if the Content-Length is invalid
+     */
+    private void startBody() throws IOException {
+        if (status >= 100 && status < 200) {
+            // Interim response, the real one follows
+            step = STATUS_LINE;
+            headSize = 0;
+            return;
+        }
+
+        String connection = first("Connection");
+        keepAlive = http11 ? !"close".equalsIgnoreCase(connection)
+                : "keep-alive".equalsIgnoreCase(connection);
+        body = EMPTY;
+        if ("HEAD".equals(request.method) || status == 204 || status == 304) {
+            step = DONE;
+            return;
+        }
+
+        String encoding = first("Transfer-Encoding");
+        if (encoding != null && encoding.toLowerCase(Locale.US).contains("chunked")) {
+            body = new byte[CHUNK_BUFFER];
+            step = CHUNK_SIZE;
+            return;
+        }
+
+        String contentLength = first("Content-Length");
+        if (contentLength != null) {
+            try {
+                remaining = Long.parseLong(contentLength.trim());
+            } catch (NumberFormatException e) {
+                throw new IOException("Unexpected Content-Length: " + contentLength);
+            }
+            if (remaining < 0) {
+                throw new IOException("Unexpected Content-Length: " + contentLength);
+            }
+            ensure(remaining);
+            step = remaining == 0 ? DONE : FIXED_BODY;
+            return;
+        }
+
+        // No length: the body ends with the connection
+        keepAlive = false;
+        body = new byte[CHUNK_BUFFER];
+        step = UNTIL_CLOSE;
+    }
+
+    /**
+     * Private: grow the body for more bytes
+     *
+     * @param more (long) Bytes to add
+     * @throws IOException if the body would be too large
+     */
+    private void ensure(long more) throws IOException {
+        long needed = length + more;
+        if (needed > MAX_BODY) {
+            throw new IOException("Response too large for the non-blocking transport");
+        }
+        if (needed > body.length) {
+            body = Arrays.copyOf(body, (int) Math.min(MAX_BODY,
+                    Math.max(needed, body.length * 2L)));
+        }
+    }
+
+    /**
+     * Private: get the first value of a header field
+     *
+     * @param name (String) Name of the field
+     * @return The value, or null if the field isn't sent
+     */
+    private String first(String name) {
+        List<String> values = headers.get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    /**
+     * Private: get the time limit of the next step
+     *
+     * @param now (long) Current System.nanoTime()
+     * @param timeout (int) Timeout in ms, 0 for none
+     * @return Deadline in System.nanoTime() units
+     */
+    private static long deadline(long now, int timeout) {
+        return timeout > 0 ? now + timeout * 1000000L : Long.MAX_VALUE;
+    }
+}
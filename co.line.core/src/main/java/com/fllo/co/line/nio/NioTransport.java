@@ -0,0 +1,612 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.nio;
+
+import com.fllo.co.line.Dispatcher;
+import com.fllo.co.line.builders.Logs;
+import com.fllo.co.line.builders.Priority;
+import com.fllo.co.line.transport.Transport;
+import com.fllo.co.line.transport.TransportCallback;
+import com.fllo.co.line.transport.TransportRequest;
+import com.fllo.co.line.transport.TransportResponse;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class NioTransport implements Transport {
+
+    private static final String CO_LINE  = "Co.line";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_IDLE_PER_HOST = 8;
+    private static final long IDLE_TIMEOUT = TimeUnit.SECONDS.toNanos(30);
+    private static final long TICK = 100;
+
+    private final Loop[] loops;
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile boolean closed;
+
+    /**
+     * Non-blocking HTTP/1.1 transport: a few selector threads
+     * send the requests and read the responses of all the
+     * connections, so a request waiting for the server
+     * doesn't hold any thread
+     *
+     * @param threads (int) Number of selector threads, at least 1
+     * @throws IOException if a selector can't be opened
+     */
+    public NioTransport(int threads) throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads < 1: " + threads);
+        }
+
+        loops = new Loop[threads];
+        try {
+            for (int i = 0; i < threads; ++i) {
+                loops[i] = new Loop(Selector.open());
+            }
+        } catch (IOException e) {
+            shutdown();
+            throw e;
+        }
+        for (int i = 0; i < threads; ++i) {
+            Thread t = new Thread(loops[i], "Co.line nio #" + (i + 1));
+            t.setDaemon(true);
+            loops[i].thread = t;
+            t.start();
+        }
+    }
+
+    /**
+     * Plain HTTP requests, without proxy
+     *
+     * @param url (URL) URL of the request
+     * @return true for the "http" URLs
+     */
+    @Override
+    public boolean supports(URL url) {
+        return "http".equals(url.getProtocol()) && System.getProperty("http.proxyHost") == null;
+    }
+
+    /**
+     * Send a request after a delay, without holding any thread
+     * meanwhile. The host is resolved in the calling thread, or
+     * in a worker of the dispatcher when called from a selector
+     * thread (a retry), so a slow DNS never stalls its connections
+     *
+     * @param request (TransportRequest) Request with an "http" URL
+     * @param callback (TransportCallback) Receiver of the response
+     * @param delay (long) Delay in ms before sending
+     */
+    @Override
+    public void send(final TransportRequest request, final TransportCallback callback,
+                     final long delay) {
+        if (!isLoopThread()) {
+            resolveAndSubmit(request, callback, delay);
+            return;
+        }
+
+        Future<?> resolution = Dispatcher.getInstance().submit(new Runnable() {
+            @Override
+            public void run() {
+                resolveAndSubmit(request, callback, delay);
+            }
+        }, Priority.CRITICAL);
+        if (resolution == null) {
+            callback.onFailure(new IOException("Too many pending requests in the dispatcher"));
+        }
+    }
+
+    /**
+     * Stop the selector threads. The requests in flight
+     * fail and the idle connections are closed
+     */
+    @Override
+    public void shutdown() {
+        closed = true;
+        for (Loop loop : loops) {
+            if (loop != null) {
+                loop.selector.wakeup();
+            }
+        }
+    }
+
+    /**
+     * Private: resolve the host of a request, then hand
+     * the request to a selector thread
+     *
+     * @param request (TransportRequest) Request with an "http" URL
+     * @param callback (TransportCallback) Receiver of the response
+     * @param delay (long) Delay in ms before sending
+     */
+    private void resolveAndSubmit(TransportRequest request, TransportCallback callback, long delay) {
+        URL url = request.url;
+        InetSocketAddress address = new InetSocketAddress(url.getHost(),
+                url.getPort() != -1 ? url.getPort() : url.getDefaultPort());
+        if (address.isUnresolved()) {
+            callback.onFailure(new UnknownHostException(url.getHost()));
+            return;
+        }
+
+        Exchange exchange = new Exchange(request, callback, address);
+        exchange.startAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delay));
+        loops[(next.getAndIncrement() & Integer.MAX_VALUE) % loops.length].submit(exchange);
+    }
+
+    /**
+     * Private: check if the current thread is a selector thread
+     *
+     * @return true if called from one of the loops
+     */
+    private boolean isLoopThread() {
+        Thread current = Thread.currentThread();
+        for (Loop loop : loops) {
+            if (loop != null && loop.thread == current) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Private: log an error of the transport
+     *
+     * @param message (String) Description of the error
+     */
+    private static void error(String message) {
+        if ( Logs.getInstance().getStatus() ) Logs.e(CO_LINE, message);
+    }
+
+    /**
+     * Private: idle connection, kept to send another request
+     */
+    private static final class Idle {
+
+        private final String route;
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final long since;
+
+        Idle(String route, SocketChannel channel, SelectionKey key, long since) {
+            this.route = route;
+            this.channel = channel;
+            this.key = key;
+            this.since = since;
+        }
+    }
+
+    /**
+     * Private: selector thread, owning its connections
+     * and its pool of idle connections
+     */
+    private final class Loop implements Runnable {
+
+        private final Selector selector;
+        private final ConcurrentLinkedQueue<Exchange> submitted = new ConcurrentLinkedQueue<>();
+        private final PriorityQueue<Exchange> delayed = new PriorityQueue<>(16,
+                new Comparator<Exchange>() {
+                    @Override
+                    public int compare(Exchange a, Exchange b) {
+                        return a.startAt < b.startAt ? -1 : (a.startAt == b.startAt ? 0 : 1);
+                    }
+                });
+        private final Map<String, ArrayDeque<Idle>> idle = new HashMap<>();
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private Thread thread;
+
+        Loop(Selector selector) {
+            this.selector = selector;
+        }
+
+        /**
+         * Add an exchange, from any thread
+         *
+         * @param exchange (Exchange) Exchange to start
+         */
+        void submit(Exchange exchange) {
+            submitted.add(exchange);
+            selector.wakeup();
+            if (closed) {
+                // The loop may be gone already
+                failSubmitted();
+            }
+        }
+
+        @Override
+        public void run() {
+            long sweep = System.nanoTime();
+            try {
+                while (!closed) {
+                    selector.select(timeout());
+
+                    long now = System.nanoTime();
+                    Exchange exchange;
+                    while ((exchange = submitted.poll()) != null) {
+                        if (exchange.startAt > now) {
+                            delayed.add(exchange);
+                        } else {
+                            start(exchange, now);
+                        }
+                    }
+                    while (!delayed.isEmpty() && delayed.peek().startAt <= now) {
+                        start(delayed.poll(), now);
+                    }
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        handle(key);
+                    }
+
+                    now = System.nanoTime();
+                    if (now - sweep >= TimeUnit.MILLISECONDS.toNanos(TICK)) {
+                        sweep(now);
+                        sweep = now;
+                    }
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                error("Non-blocking transport stopped: " + e.toString());
+            } finally {
+                closed = true;
+                close();
+            }
+        }
+
+        /**
+         * Private: get the time to wait for the connections, until
+         * the next delayed exchange or the next timeout check
+         *
+         * @return Time in ms, at least 1
+         */
+        private long timeout() {
+            if (delayed.isEmpty()) {
+                return TICK;
+            }
+            long wait = TimeUnit.NANOSECONDS.toMillis(delayed.peek().startAt - System.nanoTime());
+            return Math.max(1, Math.min(TICK, wait));
+        }
+
+        /**
+         * Private: start an exchange on an idle connection
+         * to its server, or on a new one
+         *
+         * @param exchange (Exchange) Exchange to start
+         * @param now (long) Current System.nanoTime()
+         */
+        private void start(Exchange exchange, long now) {
+            Idle connection = takeIdle(exchange.route, now);
+            if (connection != null) {
+                exchange.start(connection.channel, true, now);
+                exchange.key = connection.key;
+                exchange.key.attach(exchange);
+                exchange.key.interestOps(SelectionKey.OP_WRITE);
+                return;
+            }
+
+            try {
+                open(exchange, now);
+            } catch (IOException e) {
+                fail(exchange, e);
+            }
+        }
+
+        /**
+         * Private: open a new connection for an exchange
+         *
+         * @param exchange (Exchange) Exchange to start
+         * @param now (long) Current System.nanoTime()
+         * @throws IOException if the connection can't be opened
+         */
+        private void open(Exchange exchange, long now) throws IOException {
+            SocketChannel channel = SocketChannel.open();
+            try {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                exchange.start(channel, false, now);
+                if (channel.connect(exchange.address)) {
+                    exchange.connected(now);
+                    exchange.key = channel.register(selector, SelectionKey.OP_WRITE, exchange);
+                } else {
+                    exchange.key = channel.register(selector, SelectionKey.OP_CONNECT, exchange);
+                }
+            } catch (IOException e) {
+                closeQuietly(channel);
+                throw e;
+            }
+        }
+
+        /**
+         * Private: handle a ready connection
+         *
+         * @param key (SelectionKey) Key of the connection
+         */
+        private void handle(SelectionKey key) {
+            Object attachment = key.attachment();
+            if (attachment instanceof Idle) {
+                // The server closed an idle connection
+                removeIdle((Idle) attachment);
+                return;
+            }
+
+            Exchange exchange = (Exchange) attachment;
+            long now = System.nanoTime();
+            try {
+                if (!key.isValid()) {
+                    return;
+                }
+                if (key.isConnectable()) {
+                    if (exchange.channel.finishConnect()) {
+                        exchange.connected(now);
+                        key.interestOps(SelectionKey.OP_WRITE);
+                    }
+                } else if (key.isWritable()) {
+                    exchange.channel.write(exchange.out);
+                    if (exchange.written(now)) {
+                        key.interestOps(SelectionKey.OP_READ);
+                    }
+                } else if (key.isReadable()) {
+                    read(exchange, now);
+                }
+            } catch (IOException e) {
+                if (exchange.canResend()) {
+                    retryOnNewConnection(exchange, now);
+                } else {
+                    fail(exchange, e);
+                }
+            }
+        }
+
+        /**
+         * Private: read what the server sent for an exchange
+         *
+         * @param exchange (Exchange) Exchange waiting for its response
+         * @param now (long) Current System.nanoTime()
+         * @throws IOException if the connection or the response fails
+         */
+        private void read(Exchange exchange, long now) throws IOException {
+            buffer.clear();
+            int n = exchange.channel.read(buffer);
+            if (n == -1) {
+                if (exchange.canResend()) {
+                    retryOnNewConnection(exchange, now);
+                    return;
+                }
+                if (exchange.reused && !exchange.received) {
+                    throw new EOFException("Connection closed before the response");
+                }
+                exchange.endOfStream();
+                finish(exchange, now);
+                return;
+            }
+
+            buffer.flip();
+            if (n > 0 && exchange.read(buffer, now)) {
+                finish(exchange, now);
+            }
+        }
+
+        /**
+         * Private: the idle connection was closed by the server before
+         * the response: send the request again on a new connection,
+         * only when {@link Exchange#canResend()} allows it
+         *
+         * @param exchange (Exchange) Exchange to start again
+         * @param now (long) Current System.nanoTime()
+         */
+        private void retryOnNewConnection(Exchange exchange, long now) {
+            closeQuietly(exchange.channel);
+            try {
+                open(exchange, now);
+            } catch (IOException e) {
+                fail(exchange, e);
+            }
+        }
+
+        /**
+         * Private: keep the connection for the next request,
+         * then give the response
+         *
+         * @param exchange (Exchange) Exchange with a complete response
+         * @param now (long) Current System.nanoTime()
+         */
+        private void finish(Exchange exchange, long now) {
+            TransportResponse response = exchange.response();
+            if (exchange.keepAlive) {
+                keepIdle(new Idle(exchange.route, exchange.channel, exchange.key, now));
+            } else {
+                closeQuietly(exchange.channel);
+            }
+
+            try {
+                exchange.callback.onResponse(response);
+            } catch (RuntimeException e) {
+                error("Error in the response callback: " + e.toString());
+            }
+        }
+
+        /**
+         * Private: close the connection of an exchange and give the error
+         *
+         * @param exchange (Exchange) Failed exchange
+         * @param e (IOException) Cause of the failure
+         */
+        private void fail(Exchange exchange, IOException e) {
+            closeQuietly(exchange.channel);
+            try {
+                exchange.callback.onFailure(e);
+            } catch (RuntimeException re) {
+                error("Error in the failure callback: " + re.toString());
+            }
+        }
+
+        /**
+         * Private: fail the exchanges which can't be started anymore
+         */
+        private void failSubmitted() {
+            Exchange exchange;
+            while ((exchange = submitted.poll()) != null) {
+                fail(exchange, new IOException("Non-blocking transport shut down"));
+            }
+        }
+
+        /**
+         * Private: fail the exchanges past their deadline,
+         * close the connections idle for too long
+         *
+         * @param now (long) Current System.nanoTime()
+         */
+        private void sweep(long now) {
+            List<SelectionKey> keys = new ArrayList<>(selector.keys());
+            for (SelectionKey key : keys) {
+                Object attachment = key.attachment();
+                if (attachment instanceof Exchange) {
+                    Exchange exchange = (Exchange) attachment;
+                    if (now - exchange.deadline > 0) {
+                        fail(exchange, new SocketTimeoutException(exchange.connecting
+                                ? "connect timed out" : "Read timed out"));
+                    }
+                } else if (attachment instanceof Idle) {
+                    Idle connection = (Idle) attachment;
+                    if (now - connection.since >= IDLE_TIMEOUT) {
+                        removeIdle(connection);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Private: add a connection to the idle pool of its server,
+         * closing the oldest one when the pool is full
+         *
+         * @param connection (Idle) Connection of a complete exchange
+         */
+        private void keepIdle(Idle connection) {
+            ArrayDeque<Idle> pool = idle.get(connection.route);
+            if (pool == null) {
+                pool = new ArrayDeque<>();
+                idle.put(connection.route, pool);
+            }
+            connection.key.attach(connection);
+            connection.key.interestOps(SelectionKey.OP_READ);
+            pool.addFirst(connection);
+            if (pool.size() > MAX_IDLE_PER_HOST) {
+                closeQuietly(pool.pollLast().channel);
+            }
+        }
+
+        /**
+         * Private: take the most recent idle connection to a server
+         *
+         * @param route (String) Host and port of the server
+         * @param now (long) Current System.nanoTime()
+         * @return The connection, or null if none is usable
+         */
+        private Idle takeIdle(String route, long now) {
+            ArrayDeque<Idle> pool = idle.get(route);
+            if (pool == null) {
+                return null;
+            }
+            Idle connection;
+            while ((connection = pool.pollFirst()) != null) {
+                if (connection.channel.isOpen() && connection.key.isValid()
+                        && now - connection.since < IDLE_TIMEOUT) {
+                    return connection;
+                }
+                closeQuietly(connection.channel);
+            }
+            return null;
+        }
+
+        /**
+         * Private: remove a connection from the idle pool and close it
+         *
+         * @param connection (Idle) Idle connection
+         */
+        private void removeIdle(Idle connection) {
+            ArrayDeque<Idle> pool = idle.get(connection.route);
+            if (pool != null) {
+                pool.remove(connection);
+            }
+            closeQuietly(connection.channel);
+        }
+
+        /**
+         * Private: fail everything in flight and close the selector
+         */
+        private void close() {
+            try {
+                for (SelectionKey key : new ArrayList<>(selector.keys())) {
+                    Object attachment = key.attachment();
+                    if (attachment instanceof Exchange) {
+                        fail((Exchange) attachment,
+                                new IOException("Non-blocking transport shut down"));
+                    } else if (attachment instanceof Idle) {
+                        closeQuietly(((Idle) attachment).channel);
+                    }
+                }
+            } catch (ClosedSelectorException ignored) {
+                // nothing left to close
+            }
+            idle.clear();
+            while (!delayed.isEmpty()) {
+                fail(delayed.poll(), new IOException("Non-blocking transport shut down"));
+            }
+            failSubmitted();
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+                // the selector is released anyway
+            }
+        }
+    }
+
+    /**
+     * Private: close a connection, ignoring the errors
+     *
+     * @param channel (SocketChannel) Connection to close (can be 'null')
+     */
+    private static void closeQuietly(SocketChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // the connection is gone anyway
+        }
+    }
+}
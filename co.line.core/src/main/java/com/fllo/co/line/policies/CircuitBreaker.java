@@ -0,0 +1,242 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.policies;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+public class CircuitBreaker {
+
+    public static final String EXCEPTION = "CircuitBreakerOpenException";
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private static final ConcurrentHashMap<String, CircuitBreaker> breakers =
+            new ConcurrentHashMap<>();
+    private static volatile boolean enabled = true;
+    private static volatile int consecutiveFailures = 5;
+    private static volatile int windowSize = 20;
+    private static volatile double failureRate = 0.5;
+    private static volatile long openDuration = 30000;
+
+    private State state = State.CLOSED;
+    private final boolean[] window;
+    private int windowIndex = 0;
+    private int windowCount = 0;
+    private int windowFailures = 0;
+    private int consecutive = 0;
+    private long openedAt = 0;
+    private boolean probing = false;
+
+    /**
+     * Private: create a closed breaker
+     *
+     * @param size (int) Number of the last calls used for the failure rate
+     */
+    private CircuitBreaker(int size) {
+        this.window = new boolean[size];
+    }
+
+    /**
+     * Get the breaker of a host, created when needed
+     *
+     * @param host (String) Host of the requests
+     * @return The breaker of the host
+     */
+    public static CircuitBreaker forHost(String host) {
+        CircuitBreaker breaker = breakers.get(host);
+        if (breaker == null) {
+            CircuitBreaker created = new CircuitBreaker(windowSize);
+            breaker = breakers.putIfAbsent(host, created);
+            if (breaker == null) {
+                breaker = created;
+            }
+        }
+        return breaker;
+    }
+
+    /**
+     * Configure the breakers created from now on. A breaker opens after
+     * consecutive failures, or when the failure rate of the last calls
+     * is reached, then lets one probe through after the open duration
+     *
+     * @param failures (int) Consecutive failures to open
+     * @param size (int) Number of the last calls for the failure rate
+     * @param rate (double) Failure rate to open, from 0 to 1
+     * @param duration (long) Time in ms before the first probe
+     */
+    public static void configure(int failures, int size, double rate, long duration) {
+        if (failures < 1 || size < 1 || rate <= 0 || rate > 1 || duration < 0) {
+            throw new IllegalArgumentException("Invalid circuit breaker configuration");
+        }
+        consecutiveFailures = failures;
+        windowSize = size;
+        failureRate = rate;
+        openDuration = duration;
+        breakers.clear();
+    }
+
+    /**
+     * Enable or disable every breaker
+     *
+     * @param enable (boolean) false to always send the requests
+     */
+    public static void setEnabled(boolean enable) {
+        enabled = enable;
+        if (!enable) {
+            breakers.clear();
+        }
+    }
+
+    /**
+     * Check without side effect if the requests to a host
+     * fail fast right now
+     *
+     * @param host (String) Host of the requests
+     * @return true if the breaker is open and not ready for a probe
+     */
+    public static boolean isOpen(String host) {
+        if (!enabled) {
+            return false;
+        }
+        CircuitBreaker breaker = breakers.get(host);
+        if (breaker == null) {
+            return false;
+        }
+        synchronized (breaker) {
+            return breaker.state == State.OPEN
+                    && System.currentTimeMillis() - breaker.openedAt < openDuration;
+        }
+    }
+
+    /**
+     * Check if a request can be sent. When the breaker is open,
+     * only one probe is sent after the open duration
+     *
+     * @return true if the request can be sent, then record its result
+     */
+    public synchronized boolean allowRequest() {
+        if (!enabled) {
+            return true;
+        }
+        switch (state) {
+            case OPEN:
+                if (System.currentTimeMillis() - openedAt < openDuration) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probing = true;
+                return true;
+            case HALF_OPEN:
+                if (probing) {
+                    return false;
+                }
+                probing = true;
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Record a request which reached a healthy server
+     */
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            reset();
+            return;
+        }
+        consecutive = 0;
+        record(false);
+    }
+
+    /**
+     * Record a request which failed with a network
+     * error or a 5xx status
+     */
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        consecutive += 1;
+        record(true);
+        if (state == State.CLOSED && (consecutive >= consecutiveFailures
+                || (windowCount == window.length
+                    && windowFailures >= failureRate * window.length))) {
+            open();
+        }
+    }
+
+    /**
+     * Forget a probe which ended without a result, e.g. an
+     * unexpected error, so the next request can probe again
+     */
+    public synchronized void releaseProbe() {
+        if (state == State.HALF_OPEN) {
+            probing = false;
+        }
+    }
+
+    /**
+     * Get the current state of the breaker
+     *
+     * @return CLOSED, OPEN or HALF_OPEN
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Private: add a call to the window of the last calls
+     *
+     * @param failure (boolean) true if the call failed
+     */
+    private void record(boolean failure) {
+        if (windowCount == window.length) {
+            if (window[windowIndex]) {
+                windowFailures -= 1;
+            }
+        } else {
+            windowCount += 1;
+        }
+        window[windowIndex] = failure;
+        if (failure) {
+            windowFailures += 1;
+        }
+        windowIndex = (windowIndex + 1) % window.length;
+    }
+
+    /**
+     * Private: open the breaker from now
+     */
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+        probing = false;
+    }
+
+    /**
+     * Private: close the breaker and forget the last calls
+     */
+    private void reset() {
+        state = State.CLOSED;
+        probing = false;
+        consecutive = 0;
+        windowIndex = 0;
+        windowCount = 0;
+        windowFailures = 0;
+    }
+}
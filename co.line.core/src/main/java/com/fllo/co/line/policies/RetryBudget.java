@@ -0,0 +1,77 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.policies;
+
+public class RetryBudget {
+
+    private static final RetryBudget instance = new RetryBudget();
+
+    private double ratio = 0.2;
+    private double maxTokens = 10;
+    private double tokens = maxTokens;
+
+    /**
+     * Protected: budget's empty constructor.
+     *
+     */
+    protected RetryBudget() { }
+
+    /**
+     * Get the budget shared by every request
+     *
+     * @return An instance of budget class
+     */
+    public static RetryBudget getInstance() {
+        return instance;
+    }
+
+    /**
+     * Configure the budget: each request earns a fraction of a
+     * retry, each retry costs one. When a backend fails, retries
+     * stop at this ratio of the traffic instead of multiplying it
+     *
+     * @param ratio (double) Retries earned per request, e.g. 0.2 for 20%
+     * @param maxTokens (double) Retries which can be saved for a burst
+     */
+    public synchronized void configure(double ratio, double maxTokens) {
+        if (ratio < 0 || maxTokens < 1) {
+            throw new IllegalArgumentException("Invalid retry budget: " + ratio + ", " + maxTokens);
+        }
+        this.ratio = ratio;
+        this.maxTokens = maxTokens;
+        this.tokens = Math.min(tokens, maxTokens);
+    }
+
+    /**
+     * Earn a fraction of a retry for a new request
+     */
+    public synchronized void deposit() {
+        tokens = Math.min(maxTokens, tokens + ratio);
+    }
+
+    /**
+     * Spend one retry if the budget allows it
+     *
+     * @return true if the retry can be done
+     */
+    public synchronized boolean tryWithdraw() {
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.policies;
+
+import java.util.Random;
+
+public class RetryPolicy {
+
+    public static final RetryPolicy NONE = new RetryPolicy(0, 0, 0);
+
+    private static final Random random = new Random();
+    private static volatile RetryPolicy defaultPolicy = new RetryPolicy(2, 250, 4000);
+
+    private final int maxRetries;
+    private final long baseDelay;
+    private final long maxDelay;
+
+    /**
+     * Retries of idempotent requests after a network error or
+     * a 502, 503 or 504 status, with an exponential backoff
+     * and a full jitter
+     *
+     * @param maxRetries (int) Retries after the first attempt
+     * @param baseDelay (long) Delay in ms of the first retry, doubled each time
+     * @param maxDelay (long) Maximum delay in ms between two attempts
+     */
+    public RetryPolicy(int maxRetries, long baseDelay, long maxDelay) {
+        if (maxRetries < 0 || baseDelay < 0 || maxDelay < baseDelay) {
+            throw new IllegalArgumentException("Invalid retry policy: " + maxRetries
+                    + ", " + baseDelay + ", " + maxDelay);
+        }
+        this.maxRetries = maxRetries;
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * Set the policy of the requests without their own
+     *
+     * @param policy (RetryPolicy) Default policy, NONE to disable retries
+     */
+    public static void setDefault(RetryPolicy policy) {
+        defaultPolicy = policy;
+    }
+
+    /**
+     * Get the policy of the requests without their own
+     *
+     * @return The default policy
+     */
+    public static RetryPolicy getDefault() {
+        return defaultPolicy;
+    }
+
+    /**
+     * Get the number of retries after the first attempt
+     *
+     * @return Maximum of retries
+     */
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * Get the delay before a retry: a random value between 0
+     * and baseDelay * 2^attempt, capped by maxDelay
+     *
+     * @param attempt (int) Number of the failed attempt, from 0
+     * @return Delay in ms
+     */
+    public long delay(int attempt) {
+        long cap = Math.min(maxDelay, baseDelay << Math.min(attempt, 20));
+        return (long) (random.nextDouble() * cap);
+    }
+}
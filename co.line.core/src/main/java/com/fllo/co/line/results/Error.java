@@ -22,4 +22,13 @@ public class Error {
         this.stacktrace = stacktrace;
         this.description = description;
     }
+
+    /**
+     * Copy of the error, for another receiver
+     *
+     * @return A new Error with the same fields
+     */
+    public Error copy() {
+        return new Error(status, exception, stacktrace, description);
+    }
 }
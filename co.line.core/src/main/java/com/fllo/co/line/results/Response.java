@@ -1,9 +1,12 @@
 package com.fllo.co.line.results;
 
+import java.io.File;
+
 public class Response {
 
     public int status;
     public String body;
+    public File file;
 
     /**
      * Response object handles string results from server
@@ -15,4 +18,16 @@ public class Response {
         this.status = status;
         this.body = body;
     }
+
+    /**
+     * Copy of the response, for another receiver
+     *
+     * @return A new Response with the same status, body and file
+     */
+    public Response copy() {
+        Response copy = new Response(status, body);
+        copy.file = file;
+        return copy;
+    }
+
 }
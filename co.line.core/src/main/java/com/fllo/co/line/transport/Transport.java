@@ -0,0 +1,47 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.transport;
+
+import java.net.URL;
+
+public interface Transport {
+
+    /**
+     * Check if the transport can send a request. The others,
+     * with the downloads and the progress listeners, keep the
+     * default HttpURLConnection
+     *
+     * @param url (URL) URL of the request
+     * @return true if the transport sends it
+     */
+    boolean supports(URL url);
+
+    /**
+     * Send a request after a delay, without holding the calling
+     * thread until the response. The callback is called once,
+     * in a thread of the transport
+     *
+     * @param request (TransportRequest) Request to send
+     * @param callback (TransportCallback) Receiver of the response
+     * @param delay (long) Delay in ms before sending, 0 to send now
+     */
+    void send(TransportRequest request, TransportCallback callback, long delay);
+
+    /**
+     * Stop the transport, the requests in flight fail
+     */
+    void shutdown();
+}
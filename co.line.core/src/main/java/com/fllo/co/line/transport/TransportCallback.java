@@ -0,0 +1,37 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.transport;
+
+import java.io.IOException;
+
+public interface TransportCallback {
+
+    /**
+     * Return the complete response of the server,
+     * called in a thread of the transport
+     *
+     * @param response (TransportResponse) Status, headers and body
+     */
+    void onResponse(TransportResponse response);
+
+    /**
+     * Return the error which stopped the request,
+     * called in a thread of the transport
+     *
+     * @param e (IOException) Connection, timeout or protocol error
+     */
+    void onFailure(IOException e);
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.transport;
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
+
+public final class TransportRequest {
+
+    /**
+     * Largest body given to a transport, which
+     * keeps the whole request in memory
+     */
+    public static final int MAX_BODY = 1024 * 1024;
+
+    public final String method;
+    public final URL url;
+    public final Map<String, String> headers;
+    public final byte[] body;
+    public final int connectTimeout;
+    public final int readTimeout;
+
+    /**
+     * Request prepared for a transport, sent
+     * again as is by a retry
+     *
+     * @param method (String) HttpMethod verb of the request
+     * @param url (URL) URL of the request
+     * @param headers (Map) Header properties, in order
+     * @param body (byte[]) Body of the request, already encoded (can be 'null')
+     * @param connectTimeout (int) Connect timeout in ms
+     * @param readTimeout (int) Maximum time in ms between two reads
+     * @throws IllegalArgumentException if a header contains a line
+     * break, or the body is larger than MAX_BODY
+     */
+    public TransportRequest(String method, URL url, Map<String, String> headers,
+                            byte[] body, int connectTimeout, int readTimeout) {
+        if (body != null && body.length > MAX_BODY) {
+            throw new IllegalArgumentException("Body too large: " + body.length);
+        }
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            if (isInvalid(entry.getKey()) || isInvalid(entry.getValue())) {
+                throw new IllegalArgumentException("Invalid header: " + entry.getKey());
+            }
+        }
+
+        this.method = method;
+        this.url = url;
+        this.headers = Collections.unmodifiableMap(headers);
+        this.body = body;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Private: check if a header would break the request
+     *
+     * @param value (String) Name or value of a header
+     * @return true if it is null or contains a line break
+     */
+    private static boolean isInvalid(String value) {
+        return value == null || value.indexOf('\r') != -1 || value.indexOf('\n') != -1;
+    }
+}
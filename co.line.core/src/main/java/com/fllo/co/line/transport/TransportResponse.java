@@ -0,0 +1,110 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.transport;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public final class TransportResponse {
+
+    public final int status;
+    public final byte[] body;
+    public final int length;
+    public final long connect;
+    public final long firstByte;
+    private final Map<String, List<String>> headers;
+
+    /**
+     * Response read by a transport
+     *
+     * @param status (int) HTTP response status
+     * @param headers (Map) Header fields, with case-insensitive
+     *                names as created by newHeaders()
+     * @param body (byte[]) Body as received, still compressed
+     * @param length (int) Length of the body in the array
+     * @param connect (long) Connection time in ns, 0 for a reused
+     *                connection, -1 if unknown
+     * @param firstByte (long) Time in ns from the request sent to
+     *                  the response head, -1 if unknown
+     */
+    public TransportResponse(int status, Map<String, List<String>> headers,
+                             byte[] body, int length, long connect, long firstByte) {
+        this.status = status;
+        this.headers = headers;
+        this.body = body;
+        this.length = length;
+        this.connect = connect;
+        this.firstByte = firstByte;
+    }
+
+    /**
+     * Get the values of a header field, joined with commas
+     *
+     * @param name (String) Name of the field, in any case
+     * @return The values, or null if the field isn't sent
+     */
+    public String header(String name) {
+        List<String> values = headers.get(name);
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        if (values.size() == 1) {
+            return values.get(0);
+        }
+        StringBuilder joined = new StringBuilder(values.get(0));
+        for (int i = 1; i < values.size(); ++i) {
+            joined.append(", ").append(values.get(i));
+        }
+        return joined.toString();
+    }
+
+    /**
+     * Get all the header fields
+     *
+     * @return Unmodifiable map, with case-insensitive names
+     */
+    public Map<String, List<String>> getHeaders() {
+        return Collections.unmodifiableMap(headers);
+    }
+
+    /**
+     * Create the map of the header fields
+     *
+     * @return Map with case-insensitive names
+     */
+    public static Map<String, List<String>> newHeaders() {
+        return new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    }
+
+    /**
+     * Add a value to a header field
+     *
+     * @param headers (Map) Header fields
+     * @param name (String) Name of the field
+     * @param value (String) Value of the field
+     */
+    public static void addHeader(Map<String, List<String>> headers, String name, String value) {
+        List<String> values = headers.get(name);
+        if (values == null) {
+            values = new ArrayList<>(1);
+            headers.put(name, values);
+        }
+        values.add(value);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.cache;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CacheEntryTest {
+
+    private static final String URL = "http://api.url.com/user";
+
+    @Test
+    public void noStoreAfterNoCacheIsNotStored() {
+        assertNull(entry("no-cache, no-store, must-revalidate", "\"v1\""));
+    }
+
+    @Test
+    public void noStoreBeforeNoCacheIsNotStored() {
+        assertNull(entry("no-store, no-cache", "\"v1\""));
+    }
+
+    @Test
+    public void noStoreAfterMaxAgeIsNotStored() {
+        assertNull(entry("max-age=600, no-store", null));
+    }
+
+    @Test
+    public void noStoreBeforeMaxAgeIsNotStored() {
+        assertNull(entry("no-store, max-age=600", null));
+    }
+
+    @Test
+    public void noCacheWinsOverMaxAge() {
+        CacheEntry entry = entry("max-age=600, no-cache", "\"v1\"");
+        assertNotNull(entry);
+        assertEquals(0, entry.expires);
+        assertFalse(entry.isFresh());
+    }
+
+    @Test
+    public void maxAgeIsFresh() {
+        CacheEntry entry = entry("public, max-age=600", null);
+        assertNotNull(entry);
+        assertTrue(entry.isFresh());
+    }
+
+    @Test
+    public void refreshWithNoStoreRevalidates() {
+        CacheEntry entry = entry("max-age=600", "\"v1\"");
+        assertNotNull(entry);
+        entry.refresh(headers("max-age=600, no-store", null));
+        assertFalse(entry.isFresh());
+    }
+
+    @Test
+    public void noStoreIsNeverStorable() {
+        assertFalse(CacheEntry.isStorable(headers("max-age=600, no-store", null), false));
+        assertFalse(CacheEntry.isStorable(headers("no-store", null), true));
+    }
+
+    @Test
+    public void privateIsOnlyStorableInAPrivateCache() {
+        assertTrue(CacheEntry.isStorable(headers("private, max-age=600", null), false));
+        assertFalse(CacheEntry.isStorable(headers("max-age=600, private", null), true));
+        assertTrue(CacheEntry.isStorable(headers("public, max-age=600", null), true));
+    }
+
+    private static CacheEntry entry(String cacheControl, String etag) {
+        return CacheEntry.fromResponse(URL, "application/json", headers(cacheControl, etag));
+    }
+
+    private static Map<String, List<String>> headers(String cacheControl, String etag) {
+        Map<String, List<String>> headers = new HashMap<>();
+        headers.put("Cache-Control", Arrays.asList(cacheControl));
+        if (etag != null) {
+            headers.put("ETag", Arrays.asList(etag));
+        }
+        return headers;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.cache;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class DiskCacheTest {
+
+    private static final String URL = "http://api.url.com/user";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void concurrentPutsOfTheSameUrlKeepOneWholeBody() throws Exception {
+        File directory = folder.newFolder("cache");
+        final DiskCache cache = new DiskCache(directory, 16 * 1024 * 1024);
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] writers = new Thread[8];
+        for (int i = 0; i < writers.length; ++i) {
+            final byte[] body = new byte[256 * 1024];
+            Arrays.fill(body, (byte) ('a' + i));
+            writers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int n = 0; n < 10; ++n) {
+                        cache.put(new CacheEntry(URL, 200, "text/plain", "\"v1\"", null,
+                                System.currentTimeMillis() + 60000, 0), body, body.length);
+                    }
+                }
+            });
+            writers[i].start();
+        }
+        start.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        CacheEntry entry = cache.get(URL);
+        assertNotNull(entry);
+        byte[] stored = read(entry);
+        assertEquals(256 * 1024, stored.length);
+        for (byte b : stored) {
+            assertEquals(stored[0], b);
+        }
+        assertEquals(256 * 1024, cache.getSize());
+        // No temporary file left: only the meta and the body
+        assertEquals(2, directory.list().length);
+    }
+
+    private static byte[] read(CacheEntry entry) throws IOException {
+        InputStream in = entry.openBody();
+        try {
+            byte[] data = new byte[(int) entry.bodyFile.length()];
+            int read = 0;
+            int n;
+            while (read < data.length && (n = in.read(data, read, data.length - read)) != -1) {
+                read += n;
+            }
+            return data;
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.cache;
+
+import com.fllo.co.line.results.Response;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+public class MemoryCacheTest {
+
+    @Test
+    public void callersGetTheirOwnCopy() {
+        MemoryCache cache = new MemoryCache(1024 * 1024, 10000);
+        String key = cache.key("GET", "http://api.url.com/user", null);
+        Response stored = new Response(200, "{\"name\":\"Fllo\"}");
+        cache.put(key, stored, 10000);
+        stored.body = "changed by its caller";
+
+        Response first = cache.get(key);
+        first.body = "changed by a callback";
+        Response second = cache.get(key);
+
+        assertNotSame(first, second);
+        assertEquals(200, second.status);
+        assertEquals("{\"name\":\"Fllo\"}", second.body);
+    }
+
+    @Test
+    public void expiredResponsesAreRemoved() throws InterruptedException {
+        MemoryCache cache = new MemoryCache(1024 * 1024, 10000);
+        cache.put("GET a", new Response(200, "a"), 1);
+        Thread.sleep(5);
+        assertNull(cache.get("GET a"));
+        assertEquals(0, cache.getSize());
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.io;
+
+import com.fllo.co.line.policies.CircuitBreaker;
+import com.fllo.co.line.policies.RetryPolicy;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SegmentedDownloadTest {
+
+    private static final int LENGTH = 3 * (int) SegmentedDownload.MIN_SEGMENT_SIZE;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final byte[] content = new byte[LENGTH];
+    private final AtomicInteger gets = new AtomicInteger();
+    private final Map<Integer, AtomicInteger> getsPerSegment = new ConcurrentHashMap<>();
+    private volatile int maxChunk;
+    private HttpServer server;
+    private URL url;
+
+    @Before
+    public void setUp() throws IOException {
+        for (int i = 0; i < LENGTH; ++i) {
+            content[i] = (byte) (i * 31);
+        }
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 16);
+        server.createContext("/file", new TruncatingHandler());
+        server.start();
+        url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/file");
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        // Forget the failures recorded for the host by the breaker
+        CircuitBreaker.setEnabled(false);
+        CircuitBreaker.setEnabled(true);
+    }
+
+    @Test
+    public void truncatedResponsesAreResumed() throws Exception {
+        maxChunk = 200 * 1024;
+        File target = folder.newFile("truncated.bin");
+        SegmentedDownload download = new SegmentedDownload(url, null, 5000, 5000,
+                new FileDownload(target));
+        assertTrue(download.probe());
+
+        File file = download.run(3, null);
+        assertArrayEquals(content, read(file));
+        // Every response but the last one of a segment ends early
+        int perSegment = (int) Math.ceil((double) SegmentedDownload.MIN_SEGMENT_SIZE / maxChunk);
+        assertEquals(3 * perSegment, gets.get());
+        assertEquals(3, getsPerSegment.size());
+        for (AtomicInteger count : getsPerSegment.values()) {
+            assertEquals(perSegment, count.get());
+        }
+    }
+
+    @Test
+    public void emptyResponsesFailTheDownload() throws Exception {
+        maxChunk = 0;
+        File target = folder.newFile("empty.bin");
+        SegmentedDownload download = new SegmentedDownload(url, null, 5000, 5000,
+                new FileDownload(target));
+        download.setRetryPolicy(new RetryPolicy(2, 10, 20));
+        assertTrue(download.probe());
+
+        try {
+            download.run(3, null);
+            fail("An empty range must fail the download");
+        } catch (IOException expected) {
+            // At most 1 attempt and 2 retries per segment, fewer when
+            // the breaker opens or a failed segment cancels the others
+            assertTrue(gets.get() >= 3);
+            for (AtomicInteger count : getsPerSegment.values()) {
+                assertTrue("GETs of a segment: " + count.get(), count.get() <= 3);
+            }
+        }
+    }
+
+    private static byte[] read(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            byte[] data = new byte[(int) in.length()];
+            in.readFully(data);
+            return data;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Server of byte ranges sending at most maxChunk
+     * bytes of each range, as a complete response
+     */
+    private class TruncatingHandler implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Content-Length", String.valueOf(LENGTH));
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+                return;
+            }
+
+            gets.incrementAndGet();
+            String[] range = exchange.getRequestHeaders().getFirst("Range")
+                    .substring("bytes=".length()).split("-");
+            int from = Integer.parseInt(range[0]);
+            int to = Integer.parseInt(range[1]);
+            AtomicInteger segment = getsPerSegment.get(to);
+            if (segment == null) {
+                getsPerSegment.putIfAbsent(to, new AtomicInteger());
+                segment = getsPerSegment.get(to);
+            }
+            segment.incrementAndGet();
+            int count = Math.min(to - from + 1, maxChunk);
+            exchange.getResponseHeaders().set("Content-Range",
+                    "bytes " + from + "-" + to + "/" + LENGTH);
+            exchange.sendResponseHeaders(206, count == 0 ? -1 : count);
+            OutputStream out = exchange.getResponseBody();
+            out.write(content, from, count);
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,368 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.nio;
+
+import com.fllo.co.line.transport.TransportCallback;
+import com.fllo.co.line.transport.TransportRequest;
+import com.fllo.co.line.transport.TransportResponse;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NioTransportTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+    private volatile Responder responder;
+    private ServerSocket server;
+    private NioTransport transport;
+    private String base;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new ServerSocket(0, 16, InetAddress.getByName("127.0.0.1"));
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        }, "NioTransportTest server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        base = "http://127.0.0.1:" + server.getLocalPort();
+        transport = new NioTransport(1);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        transport.shutdown();
+        server.close();
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void readsAFixedLengthBody() throws Exception {
+        responder = new Responder() {
+            @Override
+            public boolean respond(int connection, int index, String head, byte[] body,
+                                   OutputStream out) throws IOException {
+                write(out, "HTTP/1.1 200 OK\r\nContent-Length: 11\r\nX-Reply: yes\r\n\r\n"
+                        + "hello world");
+                return true;
+            }
+        };
+        TransportResponse response = send(request("GET", "/fixed", null, 2000));
+        assertEquals(200, response.status);
+        assertEquals("hello world", body(response));
+        assertEquals("yes", response.header("x-reply"));
+    }
+
+    @Test
+    public void readsAChunkedBody() throws Exception {
+        responder = new Responder() {
+            @Override
+            public boolean respond(int connection, int index, String head, byte[] body,
+                                   OutputStream out) throws IOException {
+                write(out, "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+                        + "5\r\nhello\r\n6;name=value\r\n world\r\n0\r\nX-Trailer: 1\r\n\r\n");
+                return true;
+            }
+        };
+        TransportResponse response = send(request("GET", "/chunked", null, 2000));
+        assertEquals(200, response.status);
+        assertEquals("hello world", body(response));
+    }
+
+    @Test
+    public void sendsTheRequestBody() throws Exception {
+        responder = new Responder() {
+            @Override
+            public boolean respond(int connection, int index, String head, byte[] body,
+                                   OutputStream out) throws IOException {
+                String text = head.substring(0, head.indexOf(' ')) + " " + new String(body, UTF_8);
+                write(out, "HTTP/1.1 201 Created\r\nContent-Length: " + text.length()
+                        + "\r\n\r\n" + text);
+                return true;
+            }
+        };
+        TransportResponse response = send(request("POST", "/echo",
+                "name=Fllo".getBytes(UTF_8), 2000));
+        assertEquals(201, response.status);
+        assertEquals("POST name=Fllo", body(response));
+    }
+
+    @Test
+    public void reusesTheConnection() throws Exception {
+        responder = new Ok();
+        for (int i = 0; i < 3; ++i) {
+            assertEquals("ok", body(send(request("GET", "/reuse", null, 2000))));
+        }
+        assertEquals(1, connections.get());
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    public void opensANewConnectionWhenTheIdleOneIsClosed() throws Exception {
+        responder = new Responder() {
+            @Override
+            public boolean respond(int connection, int index, String head, byte[] body,
+                                   OutputStream out) throws IOException {
+                write(out, "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok");
+                // Keep-alive response, but the server closes the connection
+                return false;
+            }
+        };
+        assertEquals("ok", body(send(request("GET", "/idle", null, 2000))));
+        Thread.sleep(200);
+        assertEquals("ok", body(send(request("GET", "/idle", null, 2000))));
+        assertEquals(2, connections.get());
+    }
+
+    @Test
+    public void resendsAGetWhenTheReusedConnectionIsClosed() throws Exception {
+        responder = new CloseOnSecondRequest();
+        assertEquals("ok", body(send(request("GET", "/first", null, 2000))));
+        assertEquals("ok", body(send(request("GET", "/second", null, 2000))));
+        assertEquals(2, connections.get());
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    public void neverResendsAPostWhenTheReusedConnectionIsClosed() throws Exception {
+        responder = new CloseOnSecondRequest();
+        assertEquals("ok", body(send(request("GET", "/first", null, 2000))));
+        try {
+            send(request("POST", "/second", "a=1".getBytes(UTF_8), 2000));
+            fail("A POST sent on the closed connection must fail");
+        } catch (IOException expected) {
+            assertEquals(1, connections.get());
+            assertEquals(2, requests.get());
+        }
+    }
+
+    @Test
+    public void failsAfterTheReadTimeout() throws Exception {
+        responder = new Responder() {
+            @Override
+            public boolean respond(int connection, int index, String head, byte[] body,
+                                   OutputStream out) throws IOException {
+                // Never answer, and keep the connection open
+                try {
+                    Thread.sleep(5000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return false;
+            }
+        };
+        long start = System.nanoTime();
+        try {
+            send(request("GET", "/slow", null, 300));
+            fail("A silent server must time out");
+        } catch (SocketTimeoutException expected) {
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue("Timed out after " + elapsed + "ms", elapsed >= 300 && elapsed < 4000);
+        }
+    }
+
+    private TransportRequest request(String method, String path, byte[] body, int readTimeout)
+            throws IOException {
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("X-Test", "hello");
+        return new TransportRequest(method, new URL(base + path), headers, body, 2000, readTimeout);
+    }
+
+    private TransportResponse send(TransportRequest request) throws Exception {
+        final BlockingQueue<Object> result = new LinkedBlockingQueue<>();
+        transport.send(request, new TransportCallback() {
+            @Override
+            public void onResponse(TransportResponse response) {
+                result.add(response);
+            }
+
+            @Override
+            public void onFailure(IOException e) {
+                result.add(e);
+            }
+        }, 0);
+
+        Object outcome = result.poll(10, TimeUnit.SECONDS);
+        if (outcome instanceof IOException) {
+            throw (IOException) outcome;
+        }
+        if (outcome == null) {
+            fail("No response in 10s");
+        }
+        return (TransportResponse) outcome;
+    }
+
+    private static String body(TransportResponse response) {
+        return new String(response.body, 0, response.length, UTF_8);
+    }
+
+    private static void write(OutputStream out, String text) throws IOException {
+        out.write(text.getBytes(UTF_8));
+        out.flush();
+    }
+
+    /**
+     * Private: accept the connections, each one served by its own thread
+     */
+    private void accept() {
+        while (!server.isClosed()) {
+            final Socket socket;
+            try {
+                socket = server.accept();
+            } catch (IOException e) {
+                return;
+            }
+            final int connection = connections.incrementAndGet();
+            sockets.add(socket);
+            Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    serve(connection, socket);
+                }
+            }, "NioTransportTest connection #" + connection);
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    /**
+     * Private: read the requests of a connection and let
+     * the responder answer them, until it closes the connection
+     */
+    private void serve(int connection, Socket socket) {
+        try {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+            int index = 0;
+            String head;
+            while ((head = readHead(in)) != null) {
+                requests.incrementAndGet();
+                byte[] body = readBody(in, head);
+                if (!responder.respond(connection, index++, head, body, out)) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            // The client closed the connection
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // Already closed
+            }
+        }
+    }
+
+    private static String readHead(InputStream in) throws IOException {
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        int matched = 0;
+        int b;
+        while (matched < 4 && (b = in.read()) != -1) {
+            head.write(b);
+            matched = (b == '\r' && matched % 2 == 0) || (b == '\n' && matched % 2 == 1)
+                    ? matched + 1 : 0;
+        }
+        return matched == 4 ? new String(head.toByteArray(), UTF_8) : null;
+    }
+
+    private static byte[] readBody(InputStream in, String head) throws IOException {
+        int length = 0;
+        for (String line : head.split("\r\n")) {
+            if (line.toLowerCase().startsWith("content-length:")) {
+                length = Integer.parseInt(line.substring("content-length:".length()).trim());
+            }
+        }
+        byte[] body = new byte[length];
+        int read = 0;
+        while (read < length) {
+            int n = in.read(body, read, length - read);
+            if (n == -1) {
+                throw new IOException("Truncated request body");
+            }
+            read += n;
+        }
+        return body;
+    }
+
+    /**
+     * Private: answer of the scripted server to one request
+     */
+    private interface Responder {
+        /**
+         * @return false to close the connection after the response
+         */
+        boolean respond(int connection, int index, String head, byte[] body, OutputStream out)
+                throws IOException;
+    }
+
+    /**
+     * Private: short keep-alive response
+     */
+    private static class Ok implements Responder {
+        @Override
+        public boolean respond(int connection, int index, String head, byte[] body,
+                               OutputStream out) throws IOException {
+            write(out, "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok");
+            return true;
+        }
+    }
+
+    /**
+     * Private: the first connection answers its first request,
+     * then reads the second one and closes without an answer
+     */
+    private static class CloseOnSecondRequest extends Ok {
+        @Override
+        public boolean respond(int connection, int index, String head, byte[] body,
+                               OutputStream out) throws IOException {
+            return (connection > 1 || index == 0) && super.respond(connection, index, head, body, out);
+        }
+    }
+}
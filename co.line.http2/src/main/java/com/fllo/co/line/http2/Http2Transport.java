@@ -0,0 +1,255 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.http2;
+
+import com.fllo.co.line.builders.Logs;
+import com.fllo.co.line.transport.Transport;
+import com.fllo.co.line.transport.TransportCallback;
+import com.fllo.co.line.transport.TransportRequest;
+import com.fllo.co.line.transport.TransportResponse;
+
+import java.io.IOException;
+import java.net.ProxySelector;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+public class Http2Transport implements Transport {
+
+    private static final String CO_LINE  = "Co.line";
+    private static final int DEFAULT_CONNECT_TIMEOUT = 7000;
+
+    // Headers managed by HttpClient, refused in a request
+    private static final Set<String> RESTRICTED = Set.of("connection", "content-length",
+            "date", "expect", "from", "host", "upgrade", "via", "warning");
+
+    private final HttpClient client;
+    private final Set<CompletableFuture<?>> pending = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    /**
+     * HTTP/2 transport on java.net.http: the requests to a host
+     * are multiplexed over one connection, instead of one
+     * connection per request. Falls back to HTTP/1.1 when the
+     * server doesn't speak HTTP/2
+     */
+    public Http2Transport() {
+        this(DEFAULT_CONNECT_TIMEOUT);
+    }
+
+    /**
+     * HTTP/2 transport with a connect timeout, shared by all
+     * its requests
+     *
+     * @param connectTimeout (int) Connect timeout in ms
+     */
+    public Http2Transport(int connectTimeout) {
+        this(HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .proxy(ProxySelector.getDefault())
+                .connectTimeout(Duration.ofMillis(connectTimeout))
+                .build());
+    }
+
+    /**
+     * HTTP/2 transport on a configured client
+     * (SSL context, authenticator, executor...)
+     *
+     * @param client (HttpClient) Client sending the requests
+     */
+    public Http2Transport(HttpClient client) {
+        this.client = client;
+    }
+
+    /**
+     * HTTPS requests, and plain HTTP ones with an upgrade to h2c
+     *
+     * @param url (URL) URL of the request
+     * @return true for the "http" and "https" URLs
+     */
+    @Override
+    public boolean supports(URL url) {
+        return "https".equals(url.getProtocol()) || "http".equals(url.getProtocol());
+    }
+
+    /**
+     * Send a request after a delay, without holding any thread
+     * meanwhile. The callback is called in a thread of the client
+     *
+     * @param request (TransportRequest) Request to send
+     * @param callback (TransportCallback) Receiver of the response
+     * @param delay (long) Delay in ms before sending
+     */
+    @Override
+    public void send(TransportRequest request, final TransportCallback callback, long delay) {
+        if (closed) {
+            callback.onFailure(shutDown());
+            return;
+        }
+
+        final HttpRequest http;
+        try {
+            http = build(request);
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            callback.onFailure(new IOException(e));
+            return;
+        }
+
+        if (delay > 0) {
+            CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS)
+                    .execute(() -> exchange(http, callback));
+        } else {
+            exchange(http, callback);
+        }
+    }
+
+    /**
+     * Refuse the next requests, delayed ones included, and fail
+     * the requests in flight. The connections are released with
+     * the client
+     */
+    @Override
+    public void shutdown() {
+        closed = true;
+        for (CompletableFuture<?> future : pending) {
+            future.completeExceptionally(shutDown());
+        }
+    }
+
+    /**
+     * Private: send a request and give its complete response
+     *
+     * @param http (HttpRequest) Request to send
+     * @param callback (TransportCallback) Receiver of the response
+     */
+    private void exchange(HttpRequest http, TransportCallback callback) {
+        if (closed) {
+            // Shut down during the delay of the request
+            failure(callback, shutDown());
+            return;
+        }
+
+        final long sent = System.nanoTime();
+        final long[] firstByte = { -1 };
+        CompletableFuture<HttpResponse<byte[]>> future = client.sendAsync(http, info -> {
+            firstByte[0] = System.nanoTime() - sent;
+            return HttpResponse.BodySubscribers.ofByteArray();
+        });
+        pending.add(future);
+        future.whenComplete((response, error) -> {
+            pending.remove(future);
+            if (error != null) {
+                failure(callback, unwrap(error));
+                return;
+            }
+
+            Map<String, List<String>> headers = TransportResponse.newHeaders();
+            headers.putAll(response.headers().map());
+            byte[] body = response.body();
+            try {
+                callback.onResponse(new TransportResponse(response.statusCode(), headers,
+                        body, body.length, -1, firstByte[0]));
+            } catch (RuntimeException e) {
+                error("Error in the response callback: " + e.toString());
+            }
+        });
+        if (closed) {
+            // Shut down while the request was added
+            future.completeExceptionally(shutDown());
+        }
+    }
+
+    /**
+     * Private: give an error to a callback, which must
+     * not break the thread of the client
+     *
+     * @param callback (TransportCallback) Receiver of the error
+     * @param e (IOException) Cause of the failure
+     */
+    private static void failure(TransportCallback callback, IOException e) {
+        try {
+            callback.onFailure(e);
+        } catch (RuntimeException re) {
+            error("Error in the failure callback: " + re.toString());
+        }
+    }
+
+    /**
+     * Private: error of the requests refused or stopped by the shutdown
+     *
+     * @return A new IOException
+     */
+    private static IOException shutDown() {
+        return new IOException("HTTP/2 transport shut down");
+    }
+
+    /**
+     * Private: log an error of the transport
+     *
+     * @param message (String) Description of the error
+     */
+    private static void error(String message) {
+        if ( Logs.getInstance().getStatus() ) Logs.e(CO_LINE, message);
+    }
+
+    /**
+     * Private: convert a request for HttpClient. The timeout
+     * covers the connection and the response head
+     *
+     * @param request (TransportRequest) Request to convert
+     * @return The request of HttpClient
+     * @throws URISyntaxException if the URL isn't a valid URI
+     */
+    private static HttpRequest build(TransportRequest request) throws URISyntaxException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(request.url.toURI())
+                .method(request.method, request.body != null
+                        ? HttpRequest.BodyPublishers.ofByteArray(request.body)
+                        : HttpRequest.BodyPublishers.noBody());
+        if (request.connectTimeout > 0 && request.readTimeout > 0) {
+            builder.timeout(Duration.ofMillis((long) request.connectTimeout + request.readTimeout));
+        }
+        for (Map.Entry<String, String> entry : request.headers.entrySet()) {
+            if (!RESTRICTED.contains(entry.getKey().toLowerCase(Locale.US))) {
+                builder.header(entry.getKey(), entry.getValue());
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Private: get the I/O error behind a failed exchange
+     *
+     * @param error (Throwable) Error of the exchange
+     * @return The error as an IOException
+     */
+    private static IOException unwrap(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null
+                ? error.getCause() : error;
+        return cause instanceof IOException ? (IOException) cause : new IOException(cause);
+    }
+}
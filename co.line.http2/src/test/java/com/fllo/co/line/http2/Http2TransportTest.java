@@ -0,0 +1,181 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line.http2;
+
+import com.fllo.co.line.transport.TransportCallback;
+import com.fllo.co.line.transport.TransportRequest;
+import com.fllo.co.line.transport.TransportResponse;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class Http2TransportTest {
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private Http2Transport transport;
+    private String base;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 16);
+        server.createContext("/echo", exchange -> {
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            String text = exchange.getRequestMethod() + " "
+                    + exchange.getRequestHeaders().getFirst("X-Test") + " "
+                    + new String(body, StandardCharsets.UTF_8);
+            byte[] response = text.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("X-Reply", "yes");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        server.createContext("/slow", exchange -> {
+            try {
+                Thread.sleep(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.start();
+        base = "http://127.0.0.1:" + server.getAddress().getPort();
+        transport = new Http2Transport(2000);
+    }
+
+    @After
+    public void tearDown() {
+        transport.shutdown();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void supportsHttpAndHttps() throws IOException {
+        assertTrue(transport.supports(new URL("http://api.url.com/")));
+        assertTrue(transport.supports(new URL("https://api.url.com/")));
+        assertFalse(transport.supports(new URL("ftp://api.url.com/")));
+    }
+
+    @Test
+    public void sendsAGet() throws Exception {
+        TransportResponse response = send(request("GET", "/echo", null));
+        assertEquals(200, response.status);
+        assertEquals("GET hello ", body(response));
+        assertEquals("yes", response.header("x-reply"));
+    }
+
+    @Test
+    public void sendsAPostAfterADelay() throws Exception {
+        long start = System.nanoTime();
+        TransportResponse response = send(request("POST", "/echo",
+                "name=Fllo".getBytes(StandardCharsets.UTF_8)), 200);
+        assertEquals(200, response.status);
+        assertEquals("POST hello name=Fllo", body(response));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+    }
+
+    @Test
+    public void givesTheErrorStatus() throws Exception {
+        assertEquals(404, send(request("GET", "/missing", null)).status);
+    }
+
+    @Test
+    public void failsWhenShutDown() throws Exception {
+        transport.shutdown();
+        try {
+            send(request("GET", "/echo", null));
+            fail("A shut down transport must refuse the requests");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+    @Test
+    public void shutdownFailsTheRequestsInFlight() throws Exception {
+        CompletableFuture<TransportResponse> inFlight = sendAsync(request("GET", "/slow", null), 0);
+        CompletableFuture<TransportResponse> delayed = sendAsync(request("GET", "/echo", null), 300);
+        Thread.sleep(100);
+        transport.shutdown();
+        for (CompletableFuture<TransportResponse> result : List.of(inFlight, delayed)) {
+            try {
+                result.get(2, TimeUnit.SECONDS);
+                fail("A shut down transport must fail its requests");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IOException);
+            }
+        }
+    }
+
+    private TransportRequest request(String method, String path, byte[] body) throws IOException {
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("X-Test", "hello");
+        return new TransportRequest(method, new URL(base + path), headers, body, 2000, 2000);
+    }
+
+    private TransportResponse send(TransportRequest request) throws Exception {
+        return send(request, 0);
+    }
+
+    private TransportResponse send(TransportRequest request, long delay) throws Exception {
+        return sendAsync(request, delay).get(10, TimeUnit.SECONDS);
+    }
+
+    private CompletableFuture<TransportResponse> sendAsync(TransportRequest request, long delay) {
+        CompletableFuture<TransportResponse> result = new CompletableFuture<>();
+        transport.send(request, new TransportCallback() {
+            @Override
+            public void onResponse(TransportResponse response) {
+                result.complete(response);
+            }
+
+            @Override
+            public void onFailure(IOException e) {
+                result.completeExceptionally(e);
+            }
+        }, delay);
+        return result;
+    }
+
+    private static String body(TransportResponse response) {
+        return new String(response.body, 0, response.length, StandardCharsets.UTF_8);
+    }
+}
@@ -19,23 +19,18 @@ import android.annotation.TargetApi;
 import android.content.ContentValues;
 import android.content.Context;
 import android.os.Build;
-import android.os.Handler;
 import android.util.ArrayMap;
 import android.util.Log;
 
-import com.fllo.co.line.builders.HttpMethod;
+import com.fllo.co.line.builders.Logger;
 import com.fllo.co.line.builders.Logs;
-import com.fllo.co.line.callbacks.Collback;
-import com.fllo.co.line.callbacks.ObjCollback;
-import com.fllo.co.line.results.Error;
-import com.fllo.co.line.results.Response;
-import com.google.gson.Gson;
+import com.fllo.co.line.cache.DiskCache;
 
+import java.io.File;
 import java.lang.ref.WeakReference;
-import java.lang.reflect.ParameterizedType;
-import java.lang.reflect.Type;
-import java.util.Observable;
-import java.util.Observer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
 
 /**
  * Co.line
@@ -46,19 +41,26 @@ import java.util.Observer;
  * @version 2.2.1
  * https://github.com/Gitdefllo/Co.line.git
  */
-public class Coline implements Observer {
+public class Coline extends AbstractColine<Coline> {
 
     private static final String CO_LINE  = "Co.line";
 
+    static {
+        Logs.getInstance().setLogger(new Logger() {
+            @Override
+            public void d(String tag, String message) {
+                Log.d(tag, message);
+            }
+
+            @Override
+            public void e(String tag, String message) {
+                Log.e(tag, message);
+            }
+        });
+        Log.i(CO_LINE, "Initialization, version " + BuildConfig.VERSION_NAME);
+    }
+
     private WeakReference<Context> context;
-    private Thread thread;
-    private String httpmethod;
-    private String route;
-    private ContentValues headers, 
-            values;
-    private Collback collback;
-    private ObjCollback objcollback;
-    private boolean logs;
 
     /**
      * Initiate class with current app Context
@@ -70,27 +72,11 @@ public class Coline implements Observer {
     public static Coline init(Context context) {
         Coline coline  = new Coline();
         coline.context = new WeakReference<>(context);
-        coline.logs    = coline.getLogsStatus();
         return coline;
     }
 
-    /**
-     * Initiates HTTP request and URL of server
-     * HTTP request method is a static int value from HttpMethod class as:
-     *      - HttpMethod.GET
-     *      - HttpMethod.POST
-     *      - HttpMethod.PUT
-     *      - HttpMethod.DELETE
-     *      - HttpMethod.HEAD
-     *
-     * @param httpmethod (HttpMethod) Value of HttpMethod
-     * @param route (String) Value of URL route
-     * @return Current instance of the class
-     * @see HttpMethod
-     */
-    public Coline url(HttpMethod httpmethod, String route) {
-        this.httpmethod = httpmethod.toString();
-        this.route  = route;
+    @Override
+    protected Coline self() {
         return this;
     }
 
@@ -103,14 +89,7 @@ public class Coline implements Observer {
      * @return Current instance of the class
      */
     public Coline head(final ContentValues params) {
-        this.headers = new ContentValues();
-        if (params.size() <= 0) {
-            if ( logs ) Log.e(CO_LINE, "Please check the properties sent in " +
-                        "\"head(ContentValues)\".");
-        }
-
-        this.headers = params;
-        return this;
+        return head(toMap(params));
     }
 
     /**
@@ -125,13 +104,12 @@ public class Coline implements Observer {
     @TargetApi(Build.VERSION_CODES.KITKAT)
     public Coline head(final ArrayMap<String, Object> params) {
         if (params.size() <= 0) {
-            if ( logs ) Log.e(CO_LINE, "Please check the properties sent in " +
+            if ( getLogsStatus() ) Log.e(CO_LINE, "Please check the properties sent in " +
                         "\"head(ArrayMap<String, Object>)\".");
         }
 
         for (int i = 0; i<params.size(); ++i) {
-            this.headers.put(String.valueOf(params.keyAt(i)),
-                    String.valueOf(params.valueAt(i)));
+            head(String.valueOf(params.keyAt(i)), params.valueAt(i));
         }
 
         return this;
@@ -145,14 +123,7 @@ public class Coline implements Observer {
      * @return Current instance of the class
      */
     public Coline with(final ContentValues values) {
-        this.values  = new ContentValues();
-        if (values.size() <= 0) {
-            if ( logs ) Log.e(CO_LINE, "Please check the values sent in " +
-                    "\"with(ContentValues)\".");
-        }
-
-        this.values = values;
-        return this;
+        return with(toMap(values));
     }
 
     /**
@@ -167,279 +138,74 @@ public class Coline implements Observer {
     @TargetApi(Build.VERSION_CODES.KITKAT)
     public Coline with(final ArrayMap<String, Object> values) {
         if (values.size() <= 0) {
-            if ( logs ) Log.e(CO_LINE, "Please check the values sent in " +
+            if ( getLogsStatus() ) Log.e(CO_LINE, "Please check the values sent in " +
                     "\"with(ArrayMap<String, Object>)\".");
         }
 
         for (int i = 0; i<values.size(); ++i) {
-            this.values.put(String.valueOf(values.keyAt(i)),
-                    String.valueOf(values.valueAt(i)));
+            with(String.valueOf(values.keyAt(i)), values.valueAt(i));
         }
         return this;
     }
 
     /**
-     * Handle a callback with coline objects response
-     *
-     * @param collback (Collback) Interface of successful 
-     *                 and errors requests
-     * @return Current instance of the class
-     * @see Collback
-     */
-    public Coline res(Collback collback) {
-        this.collback = collback;
-        return this;
-    }
-
-    /**
-     * Handle a callback for a custom object
+     * Private: copy a ContentValues object to a Map
      *
-     * @param objcollback (ObjCollback) Interface of client
-     *                    object requests
-     * @return Coline Current instance
-     * @see Collback
+     * @param values (ContentValues) Values to copy
+     * @return Map of the values
      */
-    public Coline res(ObjCollback objcollback) {
-        this.objcollback = objcollback;
-        return this;
-    }
-
-    /**
-     * Create a current queue to add multiple
-     * requests and execute them later
-     *
-     * @see Thread
-     */
-    public void queue() {
-        thread = new Thread(new Runnable() {
-            @Override
-            public void run() {
-                Queue.init().add(Coline.this);
-            }
-        });
-        thread.start();
-    }
-
-    /**
-     * Execute all Coline instances in
-     * a thread
-     *
-     * @see Thread
-     */
-    public void send() {
-        if ( logs ) Log.d(CO_LINE, "Launch all request in the current queue");
-
-        if (Queue.getInstance() == null) {
-            if ( logs ) Log.e(CO_LINE, "The queue isn't created. Maybe you missed to add " +
-                        "a request with 'queue()'.");
-            return;
+    private static Map<String, Object> toMap(ContentValues values) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : values.valueSet()) {
+            map.put(entry.getKey(), entry.getValue());
         }
-
-        thread = new Thread(new Runnable() {
-            @Override
-            public void run() {
-                Queue.getInstance().start();
-            }
-        });
-        thread.start();
+        return map;
     }
 
     /**
-     * Executes a request in a thread
+     * Protected: the result is delivered while
+     * the context of the request exists
      *
-     * @see Thread
+     * @return true if the context is alive
      */
-    public void exec() {
-        if ( logs ) Log.d(CO_LINE, "...Request execution...");
-
-        thread = new Thread(new Runnable() {
-            @Override
-            public void run() {
-                Request req = new Request(httpmethod, route, headers, logs);
-                req.addObserver(Coline.this);
-                req.setValues(values);
-                req.makeRequest();
-            }
-        });
-        thread.start();
-    }
-
-    /**
-     * Update the instance with server response
-     *
-     * @param obs (Observable)
-     * @param obj (Object)
-     */
-    public void update(Observable obs, Object obj) {
-        if (obs instanceof Request) {
-            Request req = (Request) obs;
-            returnResult(req.res, req.err);
-        }
-    }
-    
-    /**
-     * Private: return the specific type used from interface
-     *
-     * @param cls (Class) Interface to find the parameter type
-     */
-    private Type typeFromClass(Class cls) {
-        Type[] genericInterfaces = cls.getGenericInterfaces();
-        for (Type genericInterface : genericInterfaces) {
-            if (genericInterface instanceof ParameterizedType) {
-                return ((ParameterizedType) genericInterface)
-                        .getActualTypeArguments()[0];
-            }
-        }
-        return null;
-    }
-
-    /**
-     * Private: return the response in current main thread
-     *
-     * @param res (Response) response object
-     * @param err (Error) error object
-     */
-    @SuppressWarnings("unchecked")
-    private void returnResult(final Response res, final Error err) {
-        if (collback == null && objcollback == null) 
-            return;
-        
-        if ( logs ) Log.d(CO_LINE, "ReturnResult() called");
-        
-        Context c = context.get();
-        if (c != null) {
-            new Handler(c.getMainLooper()).post(new Runnable() {
-                @Override
-                public void run() {
-                    if (objcollback != null) {
-                        Object obj = null;
-                        if (err == null) {
-                            Type type = typeFromClass(objcollback.getClass());
-                            obj = new Gson().fromJson(res.body, type);
-                        }
-                        objcollback.onResult(obj, err);
-                    } else {
-                        collback.onResult(res, err);
-                    }
-
-                    clear();
-                }
-            });
-        }
-    }
-    
-    /**
-     * Interrupt the background thread
-     *
-     * @see Thread
-     */
-    public void cancel() {
-        if ( logs ) Log.d(CO_LINE, "Interrupt background treatment");
-
-        if (thread == null) {
-            if ( logs ) Log.e(CO_LINE, "The background treatment is already null.");
-            return;
-        }
-        thread.interrupt();
-        clear();
-    }
-
-    /**
-     * Get the current status of debug logs
-     *
-     * @return boolean (true: activate, false: disable)
-     * @see Logs
-     */
-    public boolean getLogsStatus() {
-        return Logs.getInstance().getStatus();
-    }
-
-    /**
-     * Enable the debug logs
-     */
-    public static void enableDebug() {
-        Logs.getInstance().setStatus(true);
-    }
-
-    /**
-     * Disable the debug logs
-     */
-    public static void disableDebug() {
-        Logs.getInstance().setStatus(false);
-    }
-
-    /**
-     * Private: clear the current queue and
-     * call finalize
-     */
-    @SuppressWarnings("FinalizeCalledExplicitly")
-    private void clear() {
-        clearQueue();
-        try {
-            finalize();
-        } catch (Throwable t) {
-            if ( logs ) Log.e(CO_LINE, "Clear coline error: " + t.toString());
-        }
+    @Override
+    protected boolean isAlive() {
+        return context != null && context.get() != null;
     }
 
     /**
-     * Private: call overrided Object's finalize
-     * for the current queue
+     * Protected: the results are delivered in the main thread,
+     * batched with the other finished requests
      *
-     * @see {@link Queue}
+     * @return The delivery to the main thread
+     * @see Delivery
      */
-    @SuppressWarnings("FinalizeCalledExplicitly")
-    private void clearQueue() {
-        if ( Queue.getInstance() == null )
-            return;
-
-        if ( logs ) Log.d(CO_LINE, "A current request queue found");
-
-        if ( !Queue.getInstance().getPending() ) {
-            if ( logs ) Log.d(CO_LINE, "No pending requests left, try to destroy the queue");
-
-            try {
-                Queue.getInstance().finalize();
-            } catch(Throwable t) {
-                if ( logs ) Log.e(CO_LINE, "Clear queue error: "+t.toString());
-            }
-        }
+    @Override
+    protected Executor defaultExecutor() {
+        return Delivery.getInstance();
     }
 
     /**
-     * Private: destroy all references, variables and elements
+     * Enable the disk cache of GET responses, in the
+     * cache directory of the app
      *
-     * @throws Throwable Throw an exception when destroy
-     * is compromised
+     * @param context (Context) Current context of client
+     * @param maxSize (long) Maximum size of the cache in bytes
+     * @see DiskCache
      */
-    private void destroyColine() throws Throwable {
-        context = null;
-        httpmethod = null;
-        route = null;
-        values = null;
-        collback = null;
-        objcollback = null;
-        logs = false;
+    public static void enableCache(Context context, long maxSize) {
+        enableCache(new File(context.getCacheDir(), "co.line"), maxSize);
     }
 
     /**
-     * Protected: override Object's finalize method
-     * and set the current instance to null
+     * Protected: destroy all references, variables and elements
      *
      * @throws Throwable Throw an exception when destroy
      * is compromised
      */
     @Override
-    protected void finalize() throws Throwable {
-        try {
-            destroyColine();
-        }
-        catch(Exception ex) {
-            if ( logs ) Log.e(CO_LINE, "Destroying the current coline not working");
-        }
-        finally {
-            if ( logs ) Log.d(CO_LINE, "Current coline is destroyed");
-            super.finalize();
-        }
+    protected void destroyColine() throws Throwable {
+        context = null;
+        super.destroyColine();
     }
 }
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016 Florent Blot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fllo.co.line;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class Delivery implements Executor {
+
+    private static final long DEFAULT_FRAME_BUDGET = 8;
+
+    /**
+     * Executor running the results directly in the worker
+     * thread of the request, without any thread switch
+     */
+    public static final Executor WORKER = AbstractColine.WORKER;
+
+    private static Delivery instance = null;
+    private final Handler handler;
+    private final ConcurrentLinkedQueue<Runnable> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private volatile long frameBudget = DEFAULT_FRAME_BUDGET;
+    private final Runnable drain = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    /**
+     * Protected: delivery's constructor, bound to the main thread
+     */
+    protected Delivery() {
+        this.handler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Get the shared delivery to the main thread.
+     * If null, create a new one
+     *
+     * @return An instance of delivery class
+     */
+    public static synchronized Delivery getInstance() {
+        if (instance == null) {
+            instance = new Delivery();
+        }
+        return instance;
+    }
+
+    /**
+     * Set the time given to the results in one message of the
+     * main thread. The remaining results wait for the next one,
+     * so a large batch never blocks a frame
+     *
+     * @param ms (long) Budget in ms, at least 1
+     */
+    public void setFrameBudget(long ms) {
+        if (ms < 1) {
+            throw new IllegalArgumentException("frameBudget < 1: " + ms);
+        }
+        this.frameBudget = ms;
+    }
+
+    /**
+     * Get the time given to the results in one message
+     *
+     * @return Budget in ms
+     */
+    public long getFrameBudget() {
+        return this.frameBudget;
+    }
+
+    /**
+     * Add a result to deliver in the main thread. The results
+     * finished together are run in a single message
+     *
+     * @param result (Runnable) Result to deliver
+     */
+    public void post(Runnable result) {
+        pending.add(result);
+        schedule();
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        post(command);
+    }
+
+    /**
+     * Private: post the drain message, once
+     */
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            handler.post(drain);
+        }
+    }
+
+    /**
+     * Private: run the pending results in the main thread
+     * until the frame budget is spent
+     */
+    private void drain() {
+        long start = SystemClock.uptimeMillis();
+        Runnable result;
+        while ((result = pending.poll()) != null) {
+            result.run();
+            if (SystemClock.uptimeMillis() - start >= frameBudget) {
+                // Let the frame be drawn, continue in the next message
+                handler.post(drain);
+                return;
+            }
+        }
+
+        scheduled.set(false);
+        if (!pending.isEmpty()) {
+            schedule();
+        }
+    }
+}